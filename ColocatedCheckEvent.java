@@ -3,18 +3,19 @@ package com.instaclustr.kongo2;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
-// request check if goodsKey allowed on trucksKey given Goods already loaded
+// request check if goods allowed on truck given Goods already loaded. goods is a Goods id, truck a location id
+// Only posted when the truck category counts show a conflict, so the goods on board that conflict can name themselves.
 // Note that in theory we only need one Goods already on truck to be unhappy with new Goods so could stop checking remaining goods.
 public class ColocatedCheckEvent
 {
 	long time; 
-	String goodsKey;
-	String truckKey;
+	int goods;
+	int truck;
 	
-	public ColocatedCheckEvent(long t, String goods, String truck)
+	public ColocatedCheckEvent(long t, int goods, int truck)
 	{
 		this.time = t;
-		this.goodsKey = goods;
-		this.truckKey = truck;
+		this.goods = goods;
+		this.truck = truck;
 	}
 }
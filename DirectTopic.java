@@ -0,0 +1,207 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+
+/*
+ * Purpose built Topic for the Kongo event types, a drop in replacement for GuavaTopic.
+ * Keeps subscribers per event type and calls the handler methods directly,
+ * so there is no reflection, no walk of the event type hierarchy, no dispatch queue and no allocation per post.
+ * Goods receive Sensor, SensorFrame and ColocatedCheckEvent events and are held in the location Members,
+ * RFIDLoadEvent and RFIDUnloadEvent objects are the rfid event handlers, and ViolationSink the RuleViolationEvent handler.
+ * Sensor events are handed to the Members signature groups (Simulate.signatureGroups), so only goods that may violate are called.
+ * Registering is not thread safe, each location topic must only be used by one thread at a time.
+ * Posting only reads the subscriber arrays, so the shared rfid and violations topics can be posted to from several threads.
+ */
+
+public class DirectTopic implements Topic
+{
+	final String identifier;
+	
+	// subscribers for Sensor, SensorFrame and ColocatedCheckEvent events
+	final Members members;
+	
+	// subscribers for RFID events
+	RFIDLoadEvent[] loadHandlers = new RFIDLoadEvent[0];
+	RFIDUnloadEvent[] unloadHandlers = new RFIDUnloadEvent[0];
+	
+	// subscribers for RuleViolationEvents
+	ViolationSink[] violationHandlers = new ViolationSink[0];
+	
+	public DirectTopic(String identifier)
+	{
+		this.identifier = identifier;
+		this.members = new Members(identifier);
+	}
+	
+	public String identifier()
+	{
+		return identifier;
+	}
+	
+	public Members members()
+	{
+		return members;
+	}
+	
+	public boolean register(Object subscriber)
+	{
+		if (subscriber instanceof Goods)
+			return members.add((Goods) subscriber);
+		
+		if (subscriber instanceof RFIDLoadEvent)
+		{
+			if (indexOf(loadHandlers, subscriber) >= 0)
+				return false;
+			loadHandlers = Arrays.copyOf(loadHandlers, loadHandlers.length + 1);
+			loadHandlers[loadHandlers.length - 1] = (RFIDLoadEvent) subscriber;
+			return true;
+		}
+		
+		if (subscriber instanceof RFIDUnloadEvent)
+		{
+			if (indexOf(unloadHandlers, subscriber) >= 0)
+				return false;
+			unloadHandlers = Arrays.copyOf(unloadHandlers, unloadHandlers.length + 1);
+			unloadHandlers[unloadHandlers.length - 1] = (RFIDUnloadEvent) subscriber;
+			return true;
+		}
+		
+		if (subscriber instanceof ViolationSink)
+		{
+			if (indexOf(violationHandlers, subscriber) >= 0)
+				return false;
+			violationHandlers = Arrays.copyOf(violationHandlers, violationHandlers.length + 1);
+			violationHandlers[violationHandlers.length - 1] = (ViolationSink) subscriber;
+			return true;
+		}
+		
+		throw new IllegalArgumentException("no handler methods for subscriber " + subscriber + " on topic " + identifier);
+	}
+	
+	public boolean unregister(Object subscriber)
+	{
+		if (subscriber instanceof Goods)
+			return members.remove((Goods) subscriber);
+		
+		if (subscriber instanceof RFIDLoadEvent)
+		{
+			int i = indexOf(loadHandlers, subscriber);
+			if (i < 0)
+				return false;
+			loadHandlers = remove(loadHandlers, i);
+			return true;
+		}
+		
+		if (subscriber instanceof RFIDUnloadEvent)
+		{
+			int i = indexOf(unloadHandlers, subscriber);
+			if (i < 0)
+				return false;
+			unloadHandlers = remove(unloadHandlers, i);
+			return true;
+		}
+		
+		if (subscriber instanceof ViolationSink)
+		{
+			int i = indexOf(violationHandlers, subscriber);
+			if (i < 0)
+				return false;
+			violationHandlers = remove(violationHandlers, i);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	public void post(Object event)
+	{
+		if (!JfrEvents.enabled(JfrEvents.DISPATCH))
+		{
+			dispatch(event);
+			return;
+		}
+		JfrEvents.Dispatch jfr = JfrEvents.dispatch(this, event, subscribers(event));
+		dispatch(event);
+		jfr.commit();
+	}
+	
+	// number of subscribers for event, for JfrEvents
+	int subscribers(Object event)
+	{
+		if (event instanceof RFIDLoadEvent)
+			return loadHandlers.length;
+		if (event instanceof RFIDUnloadEvent)
+			return unloadHandlers.length;
+		if (event instanceof RuleViolationEvent)
+			return violationHandlers.length;
+		return members.size();
+	}
+	
+	private void dispatch(Object event)
+	{
+		if (event instanceof Sensor)
+		{
+			Sensor sensor = (Sensor) event;
+			if (Simulate.signatureGroups)
+			{
+				members.sensorEvent(sensor);
+				return;
+			}
+			Goods[] goods = members.goods;
+			for (int i = 0, n = members.size; i < n; i++)
+				goods[i].sensorEvent(sensor);
+		}
+		else if (event instanceof SensorFrame)
+		{
+			SensorFrame frame = (SensorFrame) event;
+			if (Simulate.signatureGroups)
+			{
+				members.sensorFrameEvent(frame);
+				return;
+			}
+			Goods[] goods = members.goods;
+			for (int i = 0, n = members.size; i < n; i++)
+				goods[i].sensorFrameEvent(frame);
+		}
+		else if (event instanceof ColocatedCheckEvent)
+		{
+			ColocatedCheckEvent ce = (ColocatedCheckEvent) event;
+			Goods[] goods = members.goods;
+			for (int i = 0, n = members.size; i < n; i++)
+				goods[i].colocatedRulesEvent(ce);
+		}
+		else if (event instanceof RFIDLoadEvent)
+		{
+			RFIDLoadEvent le = (RFIDLoadEvent) event;
+			for (RFIDLoadEvent handler : loadHandlers)
+				handler.rfidLoadEvent(le);
+		}
+		else if (event instanceof RFIDUnloadEvent)
+		{
+			RFIDUnloadEvent ule = (RFIDUnloadEvent) event;
+			for (RFIDUnloadEvent handler : unloadHandlers)
+				handler.rfidUnloadEvent(ule);
+		}
+		else if (event instanceof RuleViolationEvent)
+		{
+			RuleViolationEvent ve = (RuleViolationEvent) event;
+			for (ViolationSink handler : violationHandlers)
+				handler.violationEvent(ve);
+		}
+	}
+	
+	private static int indexOf(Object[] a, Object o)
+	{
+		for (int i = 0; i < a.length; i++)
+			if (a[i] == o)
+				return i;
+		return -1;
+	}
+	
+	private static <T> T[] remove(T[] a, int i)
+	{
+		T[] r = Arrays.copyOf(a, a.length - 1);
+		System.arraycopy(a, i + 1, r, i, a.length - i - 1);
+		return r;
+	}
+}
@@ -0,0 +1,62 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * The Trucks currently docked at a Warehouse, i.e. the reverse of Simulate.trucksAtWarehouses.
+ * Each Trucks remembers where it is docked and its slot, so dock, undock and picking a random docked truck are O(1).
+ */
+
+public class Docks
+{
+	Trucks[] trucks = new Trucks[4];
+	int size = 0;
+	
+	// dock truck here, undocking it from where it was. false if it is already here
+	public boolean dock(Trucks t)
+	{
+		if (t.dockedAt == this)
+			return false;
+		if (t.dockedAt != null)
+			t.dockedAt.undock(t);
+		if (size == trucks.length)
+			trucks = Arrays.copyOf(trucks, size * 2);
+		t.dockedAt = this;
+		t.dockSlot = size;
+		trucks[size++] = t;
+		return true;
+	}
+	
+	// false if truck is not docked here
+	public boolean undock(Trucks t)
+	{
+		if (t.dockedAt != this)
+			return false;
+		Trucks last = trucks[--size];
+		trucks[t.dockSlot] = last;
+		last.dockSlot = t.dockSlot;
+		trucks[size] = null;
+		t.dockedAt = null;
+		t.dockSlot = -1;
+		return true;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public Trucks get(int i)
+	{
+		return trucks[i];
+	}
+	
+	// pick one of the docked trucks at random, null if there are none
+	public Trucks random(SplittableRandom rand)
+	{
+		if (size == 0)
+			return null;
+		return trucks[rand.nextInt(size)];
+	}
+}
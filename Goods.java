@@ -15,145 +15,161 @@ import java.util.*;
 
 public class Goods {
 
-	final String prefix = "goods_"; // what am i?
+	static final String prefix = "goods_"; // what am i?
 	
 	   static boolean debug = false;
 	
-       String tag;	// each Goods has a unique random unique RFID tag
+       // dense id of the Goods in the column store, Simulate.goodsStore, which holds its RFID tag, categories and properties.
+       // A Goods object is only a handle with where the Goods is.
+       final int id;
        
-       // simple approach to categories to allow Goods with multiple categories, add new Boolean var for each new category
-       Boolean categoryPerishable = false;	// has a useByDate
-       Boolean categoryHazardous = false; 	// Is Dangerous to other things. Single Hazardous type for time being, add sub-types later
-       Boolean categoryFragile = false;		// Will break if vibrated or accelerated too much
-       Boolean categoryEdible = false;		// Is food
-       Boolean categoryMedicinal = false;	// Medicines or for medical use
-       Boolean categoryDry = false;			// Keep dry, or may explode, rust, spoil, etc.
-       Boolean categoryBulky = false; 		// heavy and big, may break other things
-       // Environmental/temperature category, only 1 allowed
-       Boolean categoryFrozenTemp = false;
-       Boolean categoryHeatSensitiveTemp = false;
-       Boolean categoryCoolTemp = false;
-       Boolean categoryRoomTemp = false;
-       Boolean categoryAmbientTemp = false;
-       
-       Temp temp = null; 			//  temperature object with actual ranges and comparison methods
-       long useByDate;				// optional "use by date" for Perishable goods.
-       String categories;			// string representing all true categories
-       // a few properties such as weight etc
-       Double weight;				// total weight in Kg of goods in package
-       Long quantity;				// how many of same type of thing are associated with the tag
-       // these properties are used to determine if the item is Bulky
-       long height;					// dimensions in cm
-       long width;
-       long breadth;
-       long volume;					// computed from dimensions
+       // location membership, see Members
+       Members location = null;		// where the Goods is now
+       int slot = -1;				// index in the location Members array
+       int groupSlot = -1;			// index in the location signature group
 
        // sensible min/max values
-       final long maxWeight             = 10000;
-       final long maxHeight             = 1000;
-       final long maxWidth              = 1000;
-       final long maxBreadth            = 1000;
-       final Double minWeight           = 1.0;
-       final long minHeight             = 1;
-       final long minWidth              = 1;
-       final long minBreadth            = 1;
-       final long minQuantity           = 1;
-       final long maxQuantity           = 10000;
+       static final long maxWeight             = 10000;
+       static final long maxHeight             = 1000;
+       static final long maxWidth              = 1000;
+       static final long maxBreadth            = 1000;
+       static final double minWeight           = 1.0;
+       static final long minHeight             = 1;
+       static final long minWidth              = 1;
+       static final long minBreadth            = 1;
+       static final long minQuantity           = 1;
+       static final long maxQuantity           = 10000;
 
-       // create a random Goods
-       public Goods()
+       // create a random Goods in the store, drawing everything from the world random number stream
+       public Goods(SplittableRandom rand)
        {
-
-              Random rand = new Random();
-
-              // associate tag with this Goods
-              this.tag = this.prefix + randomUUID();
+              // associate tag with this Goods, a random UUID kept as its two longs and only made into a String when it's printed
+              long msb = uuidMsb(rand.nextLong());
+              long lsb = uuidLsb(rand.nextLong());
               double lambda = 0.01;
-              this.weight = Math.log(1-rand.nextDouble())/(-lambda);
-              this.quantity = (long) rand.nextInt((int) (this.maxQuantity-this.minQuantity)) + this.minQuantity;
+              double weight = Math.log(1-rand.nextDouble())/(-lambda);
+              int quantity = (int) (rand.nextInt((int) (maxQuantity-minQuantity)) + minQuantity);
            
+              // these properties are used to determine if the item is Bulky
               lambda = 0.001;
-              this.height =  (long) (Math.log(1-rand.nextDouble())/(-lambda));
-              this.width = (long) (Math.log(1-rand.nextDouble())/(-lambda));
-              this.breadth = (long) (Math.log(1-rand.nextDouble())/(-lambda));
-              this.volume = this.height * this.width * this.breadth;
+              int height =  (int) (Math.log(1-rand.nextDouble())/(-lambda));
+              int width = (int) (Math.log(1-rand.nextDouble())/(-lambda));
+              int breadth = (int) (Math.log(1-rand.nextDouble())/(-lambda));
+              long volume = (long) height * width * breadth;
               
-              this.useByDate = Long.MAX_VALUE;
-              this.categoryPerishable = rand.nextDouble() < 0.2;
-              if (this.categoryPerishable)
-            	  	this.useByDate = rand.nextInt(100000);
+              long useByDate = Long.MAX_VALUE;	// optional "use by date" for Perishable goods.
+              int cats = 0;
+              if (rand.nextDouble() < 0.2)
+              {
+            	  	cats |= Rules.PERISHABLE;
+            	  	useByDate = rand.nextInt(100000);
+              }
               
-              this.categoryHazardous = rand.nextDouble() < 0.1;
-              this.categoryFragile = rand.nextDouble() < 0.05;
-              this.categoryEdible = rand.nextDouble() < 0.2;
-              this.categoryMedicinal = rand.nextDouble() < 0.2;
+              if (rand.nextDouble() < 0.1) cats |= Rules.HAZARDOUS;
+              if (rand.nextDouble() < 0.05) cats |= Rules.FRAGILE;
+              if (rand.nextDouble() < 0.2) cats |= Rules.EDIBLE;
+              if (rand.nextDouble() < 0.2) cats |= Rules.MEDICINAL;
               
               // bulky if (any dimension > 1m || volume > (50*50*50)) and weight > 100kg
-              this.categoryBulky = (this.height > 100.0 || this.width > 100.0 || this.breadth > 100.0 || this.volume > 125000) && this.weight >= 100.0;
+              if ((height > 100.0 || width > 100.0 || breadth > 100.0 || volume > 125000) && weight >= 100.0)
+            	  	cats |= Rules.BULKY;
               
               // decide if it has a temperature category and pick only one.
               // 1.0 chance if perishable or medicinal
-              if (rand.nextDouble() < 0.2 || (this.categoryMedicinal || this.categoryPerishable))
-              {
-            	  	int r = rand.nextInt(5);
-            	  	switch (r)
-            	  	{
-            	  		case 0: this.categoryFrozenTemp = true; temp = new Temp(0); break;
-            	  		case 1:	this.categoryHeatSensitiveTemp = true; temp = new Temp(1); break;
-            	  		case 2:	this.categoryCoolTemp = true; temp = new Temp(2); break;
-            	  		case 3:	this.categoryRoomTemp = true; temp = new Temp(3); break;
-            	  		case 4:	this.categoryAmbientTemp = true; temp = new Temp(4); break;
-            	  	}
-              }
+              if (rand.nextDouble() < 0.2 || (cats & (Rules.MEDICINAL | Rules.PERISHABLE)) != 0)
+            	  	cats |= Rules.tempCategory(rand.nextInt(5));
              
-              this.categoryDry = rand.nextDouble() < 0.2;
-              // create string representation of all categories
-              this.categories = allCategories();
+              if (rand.nextDouble() < 0.2) cats |= Rules.DRY;
+              this.id = Simulate.goodsStore.add(this, msb, lsb, cats, useByDate, weight, quantity, height, width, breadth);
+       }
+
+       // handle for Goods id whose properties are already in the store, e.g. restored from a Snapshot
+       Goods(int id)
+       {
+              this.id = id;
+       }
+
+       // each Goods has a unique random RFID tag
+       public String tag()
+       {
+    	   		return prefix + new UUID(Simulate.goodsStore.tagMsb[id], Simulate.goodsStore.tagLsb[id]).toString();
        }
 
-       // return random UUID as String
-       public static String randomUUID()
+       // categories are bits of a single mask, see Rules for the bits and the co-location conflict tables.
+       // Only 1 Environmental/temperature category is allowed.
+       public int categoryMask()
        {
-    	   		UUID uuid = UUID.randomUUID();
+    	   		return Simulate.goodsStore.categoryMask[id];
+       }
+       
+       public long useByDate()
+       {
+    	   		return Simulate.goodsStore.useByDate[id];
+       }
+       
+       // shared temperature object with actual ranges and comparison methods
+       public Temp temp()
+       {
+    	   		return Temp.of(Rules.tempSubCat(categoryMask()));
+       }
+
+       // return random (version 4) UUID as String, from the random number stream so the same seed gives the same tags
+       public static String randomUUID(SplittableRandom rand)
+       {
+    	   		long msb = uuidMsb(rand.nextLong());
+    	   		long lsb = uuidLsb(rand.nextLong());
+    	   		UUID uuid = new UUID(msb, lsb);
     	   		String r = uuid.toString();
     	   		return r;
        }
 
+       // version 4 UUID most and least significant longs from random longs
+       static long uuidMsb(long r)
+       {
+    	   		return (r & ~0xF000L) | 0x4000L;
+       }
+
+       static long uuidLsb(long r)
+       {
+    	   		return (r & ~(0xC000L << 48)) | (0x8000L << 48);
+       }
+
        
        // return all categories as a String
        public  String allCategories()
        {
-    	   		String s = "";
-    	   	
-    	   		if (categoryPerishable) s += "P";
-    	   		if (categoryHazardous) s += "H";
-    	   		if (categoryFragile) s+= "F";  
-    	   		if (categoryEdible) s += "E";
-    	   		if (categoryMedicinal) s += "M";
-    	   		if (categoryBulky) s += "B";
-    	   		if (categoryDry) s += "D";
-    	   		if (categoryFrozenTemp) s += "T1";
-    	   		if (categoryHeatSensitiveTemp) s += "T2";
-    	   		if (categoryCoolTemp) s += "T3";
-    	   		if (categoryRoomTemp) s += "T4";
-    	   		if (categoryAmbientTemp) s += "T5";
-	  	
-    	   		return s;
+    	   		return Rules.categoryString(categoryMask());
+       }
+       
+       // true if this Goods has the category (one of the Rules category bits)
+       public boolean hasCategory(int category)
+       {
+    	   		return (categoryMask() & category) != 0;
        }
        
        // New Event Bus method to subscribe to sensor events from sensor topics
        @Subscribe
        public void sensorEvent(Sensor sensor)
        {
-			if (debug) System.out.println("GOT SENSOR EVENT! Object=" +  tag + ", event=" + sensor.toStr());
+			if (debug) System.out.println("GOT SENSOR EVENT! Object=" +  tag() + ", event=" + sensor.toStr());
 			
 			// got a sensor event for this goods at the warehouse it is in. What to do with it? Check rules!
-			String v = violatedSensorCatRules(sensor);
+			int v = sensorViolations(sensor);
+			
+			if (v != 0)
+				Simulate.violation(RuleViolationEvent.sensor(sensor.time, id, sensor.location, v));
+       }
+       
+       // subscribe to sensor frame events, all the metric readings for the location in one event
+       @Subscribe
+       public void sensorFrameEvent(SensorFrame frame)
+       {
+			if (debug) System.out.println("GOT SENSOR FRAME EVENT! Object=" +  tag() + ", event=" + frame.toStr());
+			
+			int v = sensorFrameViolations(frame);
 			
-			if (!v.equals(""))
-				System.out.println("SENSOR RULE VIOLATION for goods=" + tag + ", categories=" + allCategories() + " in warehouse " + sensor.tag + " violations: " + v);
-			//else
-			//	System.out.println("SENSOR RULE OK for goods=" + tag + " " + allCategories() + " in warehouse " + sensor.tag + " violations: " + v);		
+			if (v != 0)
+				Simulate.violation(RuleViolationEvent.sensor(frame.time, id, frame.location, v));
        }
        
        // if this Goods gets a ColocatedCheckEvent message then check if it is happy being in same truck as the passed goods object
@@ -161,18 +177,18 @@ public class Goods {
        @Subscribe
        public void colocatedRulesEvent(ColocatedCheckEvent event)
        {
-			if (debug) System.out.println("GOT Colocated Check EVENT! Object=" +  tag);
+			if (debug) System.out.println("GOT Colocated Check EVENT! Object=" +  tag());
 			// don't check against self!
-			if (tag != event.goodsKey)
+			if (id != event.goods)
 			{
 				// get the Goods object to check against
-				Goods loadMe = Simulate.allGoods.get(event.goodsKey);
+				Goods loadMe = Simulate.goodsStore.get(event.goods);
 				if (loadMe != null)
 				{
-					boolean happy = allowedInTruck(loadMe);
-					// TODO This should eventually be a new violation event
-					if (!happy)
-						System.out.println("Object already loaded on Truck " + tag + " is NOT HAPPY with Goods being loaded= " + event.goodsKey);
+					// categories of the goods being loaded which this goods can't be with
+					int conflicts = Rules.goodsNotAllowedInTruck(categoryMask()) & loadMe.categoryMask();
+					if (conflicts != 0)
+						Simulate.violation(RuleViolationEvent.colocated(event.time, id, event.truck, conflicts, event.goods));
 				}
 			}
        }
@@ -181,72 +197,69 @@ public class Goods {
        // simplified compared with original intention, as no hazardous goods are allowed together.
        public boolean notAllowedInTruck(Goods y)
        {
-    	   		if (		categoryFragile && y.categoryBulky ||
-    	   				categoryBulky && y.categoryFragile ||
-    	   				categoryHazardous && (y.categoryEdible || y.categoryMedicinal) ||
-    	   				(categoryEdible || categoryMedicinal) && y.categoryHazardous ||
-    	   				categoryEdible && y.categoryMedicinal ||
-    	   				categoryMedicinal && y.categoryEdible ||
-    	   				categoryHazardous && y.categoryHazardous
-    	   		)
-    	   			return true;
-    	   		else return false;
+    	   		return !Rules.allowedInTruck(categoryMask(), y.categoryMask());
        }
        
        public boolean allowedInTruck(Goods y)
        {
-    	   		return !notAllowedInTruck(y);
+    	   		return Rules.allowedInTruck(categoryMask(), y.categoryMask());
+       }
+       
+       // check against the categories already on board a truck, see Trucks.categoriesOnBoard
+       public boolean allowedInTruck(int categoriesOnBoard)
+       {
+    	   		return Rules.allowedInTruck(categoryMask(), categoriesOnBoard);
        }
              
        // sensor range checking methods. Only return false (violation) if the sensor metric value is present AND the value is out of range.
        // dry if not wet.
        public boolean dry(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("humidity") && sensor.value > 60);
+    	   		return !(sensor.metric == Metric.HUMIDITY && sensor.value > 60);
        }
        
        // dark if not light
        public boolean dark(Sensor sensor)
        {
-    	   	return !(sensor.metric.equals("illuminace") && sensor.value > 500);
+    	   	return !(sensor.metric == Metric.ILLUMINANCE && sensor.value > 500);
        }
        
        // return true if use by date is in the future
        public boolean useByDate(Sensor sensor)
        {
     	   		long now = sensor.time;
-    	   		return (useByDate > now);
+    	   		return (useByDate() > now);
        }
        
        // temperature check methods which uses the Temp object
        public boolean tempCheck(Sensor sensor)
        {
-    	   		return	!(sensor.metric.equals("temp") &&  !temp.tempInRange(sensor.value));
+    	   		return	!(sensor.metric == Metric.TEMP &&  !temp().tempInRange(sensor.value));
        }
        
        public boolean frozen(Sensor sensor)
        {
-    	   		return	!(sensor.metric.equals("temp") && sensor.value > -20);
+    	   		return	!(sensor.metric == Metric.TEMP && sensor.value > -20);
        }
        
        public boolean heatSensitive(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 2 || sensor.value > 8));
+    	   		return !(sensor.metric == Metric.TEMP && (sensor.value < 2 || sensor.value > 8));
        }
        
        public boolean cool(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 8 || sensor.value > 15));
+    	   		return !(sensor.metric == Metric.TEMP && (sensor.value < 8 || sensor.value > 15));
        }
        
        public boolean roomTemp(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 15 || sensor.value > 25));
+    	   		return !(sensor.metric == Metric.TEMP && (sensor.value < 15 || sensor.value > 25));
        }
        
        public boolean ambientTemp(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("temp") && (sensor.value < 1 || sensor.value > 30));
+    	   		return !(sensor.metric == Metric.TEMP && (sensor.value < 1 || sensor.value > 30));
        }
        
        // composite rules for categories
@@ -267,13 +280,13 @@ public class Goods {
       
        public boolean lowG(Sensor sensor)
        {
-    	   		return !(sensor.metric.equals("acceleration") && (sensor.value >= 5));
+    	   		return !(sensor.metric == Metric.ACCELERATION && (sensor.value >= 5));
        }
       
        public boolean smoothRide(Sensor sensor)
        {
-    	  		return !(sensor.metric.equals("vibrationDisplacement") && sensor.value >= 10 ||
-    	  				sensor.metric.equals("vibrationVelocity") && sensor.value >= 100);
+    	  		return !(sensor.metric == Metric.VIBRATION_DISPLACEMENT && sensor.value >= 10 ||
+    	  				sensor.metric == Metric.VIBRATION_VELOCITY && sensor.value >= 100);
        }
       
       public boolean ruleFragile(Sensor sensor)
@@ -281,155 +294,86 @@ public class Goods {
     	  		return lowG(sensor) && smoothRide(sensor);
       }
       
+      // the category rules this Goods violates for a sensor reading, as a mask of the categories whose rules are violated.
+      // Same rules as the methods above, see Rules.sensorViolations, plus the use by date for perishable goods.
+      public int sensorViolations(Sensor sensor)
+      {
+	    	  	int mask = categoryMask();
+	    	  	int violated = Rules.sensorViolations(mask, sensor);
+	    	  	// perishable goods past their use by date violate for every reading
+	    	  	if (useByDate() <= sensor.time)
+	    	  		violated |= mask & Rules.PERISHABLE;
+	    	  	return violated;
+      }
+      
       // given the categories check against the sensor metric/values
       public boolean checkSensorCatRules(Sensor sensor)
       {
-	    	  	boolean ok = true;
-	    	  	if (categoryFragile)
-	    	  		ok &= ruleFragile(sensor);
-	    	  	if (categoryMedicinal)
-	    	  		ok &= ruleMedicinal(sensor);
-	    	  	if (categoryPerishable)
-	    	  		ok &= rulePerishable(sensor);
-	    	  	if (categoryEdible)
-	    	  		ok &= ruleEdible(sensor);
-	    	  	if (categoryDry)
-	    	  		ok &= dry(sensor);
-	    	  	if (temp != null)
-	    	  		ok &= tempCheck(sensor);
-	    	  	
-	    	  	return ok;
+	    	  	return sensorViolations(sensor) == 0;
       }
       
       // this version returns String of all violations (false) or "" (true)
       public String violatedSensorCatRules(Sensor sensor)
       {
-	    	  	boolean a = true;
-	    	  	String s = "";
-	    	  	if (categoryFragile)
-	    	  	{
-	    	  		a = ruleFragile(sensor);
-	    	  		if (!a)
-	    	  			s += "fragile ";	
-	    	  	}
-	    	  	if (categoryMedicinal)
-	    	  	{
-	    	  		a = ruleMedicinal(sensor);
-	    	  		if (!a)
-	    	  			s += "medicinal ";
-	    	  	}
-	    	  	if (categoryPerishable)
-	    	  	{
-	    	  		a = rulePerishable(sensor);
-	    	  		if (!a)
-	    	  			s += "perishable ";
-	    	  	}
-	    	  	if (categoryEdible)
-	    	  	{
-	    	  		a = ruleEdible(sensor);
-	    	  		if (!a)
-	    	  			s += "edible ";
-	    	  	}
-	    	  	if (categoryDry)
-	    	  	{
-	    	  		a = dry(sensor);
-	    	  		if (!a)
-	    	  			s += "dry ";
-	    	  	}
-	    	  	if (temp != null)
-	    	  	{
-	    	  		a = tempCheck(sensor);
-	    	  		if (!a)
-	    	  			s += "temp";
-	    	  	}
-	    	  	
-	    	  	return s;
+	    	  	return Rules.violationString(sensorViolations(sensor));
+      }
+      
+      // frame version of sensorViolations, checks all the category rules against all the readings in one pass.
+      public int sensorFrameViolations(SensorFrame frame)
+      {
+	    	  	int mask = categoryMask();
+	    	  	int violated = Rules.sensorFrameViolations(mask, frame);
+	    	  	if (useByDate() <= frame.time)
+	    	  		violated |= mask & Rules.PERISHABLE;
+	    	  	return violated;
+      }
+      
+      public String violatedSensorFrameRules(SensorFrame frame)
+      {
+	    	  	return Rules.violationString(sensorFrameViolations(frame));
       }
       
       // check if goods are allowed on a truck given temp rules and truck temperature range
       public boolean truckTempRules(Trucks truck)
       {
-	    	  	// if any temperature cat then check truck offering
-	    	  	if (categoryAmbientTemp || categoryCoolTemp || categoryFrozenTemp || categoryHeatSensitiveTemp || categoryRoomTemp)
-	    	  	{
-	    	  		if (!truck.tempControlled)
-	    	  			return false;
-	    	  			
-	    	  		// if needs to be frozen truck must be frozen etc
-	    	  		if (categoryFrozenTemp)
-	    	  			return truck.tempRange == 0;
-	    	  		
-	    	  		if (categoryHeatSensitiveTemp)
-	    	  			return truck.tempRange == 1;
-	    	  		
-	    	  		if (categoryCoolTemp)
-	    	  			return truck.tempRange == 2;
-	    	  		
-	    	  		if (categoryRoomTemp)
-	    	  			return truck.tempRange == 3;
-	    	  		
-	    	  		// for ambient temp, any temp range except freezing is ok
-	    	  		if (categoryAmbientTemp)
-	    	  			return truck.tempRange == 1 || truck.tempRange == 2 || truck.tempRange == 3 || truck.tempRange == 4;
-	    	  	}
-	    	  	return true;
+	    	  	return Rules.tempAllowed(categoryMask(), truck.tempControlled, truck.tempRange);
       }
       
       // Are Goods allowed in warehouse given temperature rules?
-	  public boolean warehouseTempRules(Warehouses truck)
+	  public boolean warehouseTempRules(Warehouses warehouse)
 	  {
-	  		// if any temp cat then check warehouse temperature offering
-		  	if (categoryAmbientTemp || categoryCoolTemp || categoryFrozenTemp || categoryHeatSensitiveTemp || categoryRoomTemp)
-		  	{
-		  		if (!truck.tempControlled)
-		  			return false;
-		  			
-		  		// if needs to be frozen truck must be frozen
-		  		if (categoryFrozenTemp)
-		  			return truck.tempRange == 0;
-		  		
-		  		if (categoryHeatSensitiveTemp)
-		  			return truck.tempRange == 1;
-		  		
-		  		if (categoryCoolTemp)
-		  			return truck.tempRange == 2;
-		  		
-		  		if (categoryRoomTemp)
-		  			return truck.tempRange == 3;
-		  		
-		  		if (categoryAmbientTemp)
-		  			return truck.tempRange == 1 || truck.tempRange == 2 || truck.tempRange == 3 || truck.tempRange == 4;
-		  	}
-		  	return true;
+		  	return Rules.tempAllowed(categoryMask(), warehouse.tempControlled, warehouse.tempRange);
 	  }   
 
 	  // return String of Goods categories and properties
       public String toStr()
       {
               String s = "";
-              s += "RFID tag=" + tag + ", ";
-              s += categoryPerishable ? " category Perishable, " : "";
-              s += categoryHazardous ? " category Hazardous, " : "";
-              s += categoryFragile ? " category Fragile, " : "";
-              s += categoryEdible ? " category Edible, " : "";
-              s += categoryBulky ? " category Bulky, " : "";
-              s += weight + "kg, ";
-              s += quantity + " items, ";
-              s += height + "cm height, ";
-              s += width + "cm width, ";
-              s += breadth + "cm breadth, ";
-              s += volume + "cubiccm volume";
+              s += "RFID tag=" + tag() + ", ";
+              s += hasCategory(Rules.PERISHABLE) ? " category Perishable, " : "";
+              s += hasCategory(Rules.HAZARDOUS) ? " category Hazardous, " : "";
+              s += hasCategory(Rules.FRAGILE) ? " category Fragile, " : "";
+              s += hasCategory(Rules.EDIBLE) ? " category Edible, " : "";
+              s += hasCategory(Rules.BULKY) ? " category Bulky, " : "";
+              GoodsStore store = Simulate.goodsStore;
+              s += store.weight[id] + "kg, ";
+              s += store.quantity[id] + " items, ";
+              s += store.height[id] + "cm height, ";
+              s += store.width[id] + "cm width, ";
+              s += store.breadth[id] + "cm breadth, ";
+              s += store.volume(id) + "cubiccm volume";
               return s;
        }
 
        public static void main(String[] args)
        {
+              SplittableRandom rand = new SplittableRandom();
               for (int i=0; i < 100; i++)
               {
-                     Goods g = new Goods();
+                     Goods g = new Goods(rand);
                      String s = g.toStr();
                      System.out.println(s);
-                     System.out.println("Categories= " + g.categories);
+                     System.out.println("Categories= " + g.allCategories());
               }
        }
 
@@ -0,0 +1,113 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+
+/*
+ * Column store of the properties of all Goods, one primitive array per property indexed by the Goods id.
+ * Ids are dense, 0 to size-1 in order of creation, so a Goods costs a few bytes per column rather than an object with boxed fields.
+ * The temperature category is one of the category bits (see Rules.tempSubCat) and the Temp objects are shared (Temp.of).
+ * Columns are written once when a Goods is created and only read after that.
+ * RFID tags are kept as the two longs of their UUID, so a Goods is only its handle and the columns, not a tag String too.
+ * The store also maps ids back to the Goods handles, which carry the location membership.
+ * Adding is not thread safe, Goods are created by one thread before the simulation starts.
+ */
+
+public class GoodsStore
+{
+	int size = 0;
+
+	Goods[] handles;		// Goods object for each id
+	long[] tagMsb;			// RFID tag UUID, see Goods.tag
+	long[] tagLsb;
+	int[] categoryMask;		// categories, see Rules
+	long[] useByDate;		// use by date for perishable goods, Long.MAX_VALUE for none
+	double[] weight;		// total weight in Kg of goods in package
+	int[] quantity;			// how many of same type of thing are associated with the tag
+	int[] height;			// dimensions in cm
+	int[] width;
+	int[] breadth;
+
+	public GoodsStore(int capacity)
+	{
+		capacity = Math.max(capacity, 16);
+		handles = new Goods[capacity];
+		tagMsb = new long[capacity];
+		tagLsb = new long[capacity];
+		categoryMask = new int[capacity];
+		useByDate = new long[capacity];
+		weight = new double[capacity];
+		quantity = new int[capacity];
+		height = new int[capacity];
+		width = new int[capacity];
+		breadth = new int[capacity];
+	}
+
+	// make room for n more Goods, so creating a large world doesn't copy the columns as it grows
+	public void ensureCapacity(int n)
+	{
+		int capacity = categoryMask.length;
+		if (size + n <= capacity)
+			return;
+		capacity = Math.max(size + n, capacity * 2);
+		handles = Arrays.copyOf(handles, capacity);
+		tagMsb = Arrays.copyOf(tagMsb, capacity);
+		tagLsb = Arrays.copyOf(tagLsb, capacity);
+		categoryMask = Arrays.copyOf(categoryMask, capacity);
+		useByDate = Arrays.copyOf(useByDate, capacity);
+		weight = Arrays.copyOf(weight, capacity);
+		quantity = Arrays.copyOf(quantity, capacity);
+		height = Arrays.copyOf(height, capacity);
+		width = Arrays.copyOf(width, capacity);
+		breadth = Arrays.copyOf(breadth, capacity);
+	}
+
+	// make the store n Goods long for columns filled in directly, e.g. by a Snapshot restore. The handles are added by the caller
+	void restore(int n)
+	{
+		clear();
+		ensureCapacity(n);
+		size = n;
+	}
+
+	// add a Goods, returns its id
+	public int add(Goods g, long msb, long lsb, int mask, long useBy, double kg, int items, int h, int w, int b)
+	{
+		ensureCapacity(1);
+		int id = size++;
+		handles[id] = g;
+		tagMsb[id] = msb;
+		tagLsb[id] = lsb;
+		categoryMask[id] = mask;
+		useByDate[id] = useBy;
+		weight[id] = kg;
+		quantity[id] = items;
+		height[id] = h;
+		width[id] = w;
+		breadth[id] = b;
+		return id;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// Goods for id
+	public Goods get(int id)
+	{
+		return handles[id];
+	}
+
+	// volume is computed from dimensions
+	public long volume(int id)
+	{
+		return (long) height[id] * width[id] * breadth[id];
+	}
+
+	// forget all the Goods, keeping the columns for the next world
+	public void clear()
+	{
+		Arrays.fill(handles, 0, size, null);
+		size = 0;
+	}
+}
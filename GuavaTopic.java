@@ -0,0 +1,88 @@
+package com.instaclustr.kongo2;
+
+import com.google.common.eventbus.EventBus;
+
+/*
+ * Topic using a Guava Event Bus, subscribers are found by reflection of their @Subscribe methods.
+ * Kept so the direct dispatcher can be benchmarked against it.
+ * Members.add moves a Goods from wherever it is, e.g. when an RFID event finds it isn't where the event says, so registering a Goods
+ * also unregisters it from the Event Bus of the topic it was at, and it only gets the events of its one location as with direct dispatch.
+ */
+
+public class GuavaTopic implements Topic
+{
+	final EventBus eventBus;
+	final Members members;
+	
+	// Members that knows its topic, so a Goods moved away can be unregistered from the topic it was at
+	static class GuavaMembers extends Members
+	{
+		final GuavaTopic topic;
+		
+		GuavaMembers(String location, GuavaTopic topic)
+		{
+			super(location);
+			this.topic = topic;
+		}
+	}
+	
+	public GuavaTopic(String identifier)
+	{
+		this.eventBus = new EventBus(identifier);
+		this.members = new GuavaMembers(identifier, this);
+	}
+	
+	public String identifier()
+	{
+		return eventBus.identifier();
+	}
+	
+	public Members members()
+	{
+		return members;
+	}
+	
+	// Goods membership is checked first so the Event Bus is only asked to (un)register a Goods that will succeed
+	public boolean register(Object subscriber)
+	{
+		if (subscriber instanceof Goods)
+		{
+			Goods g = (Goods) subscriber;
+			Members from = g.location;
+			if (!members.add(g))
+				return false;
+			if (from instanceof GuavaMembers)
+				((GuavaMembers) from).topic.eventBus.unregister(g);
+		}
+		eventBus.register(subscriber);
+		return true;
+	}
+	
+	public boolean unregister(Object subscriber)
+	{
+		if (subscriber instanceof Goods && !members.remove((Goods) subscriber))
+			return false;
+		try
+		{
+			eventBus.unregister(subscriber);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+		return true;
+	}
+	
+	// the Event Bus doesn't say how many subscribers it has, JfrEvents get the goods at the location
+	public void post(Object event)
+	{
+		if (!JfrEvents.enabled(JfrEvents.DISPATCH))
+		{
+			eventBus.post(event);
+			return;
+		}
+		JfrEvents.Dispatch jfr = JfrEvents.dispatch(this, event, members.size());
+		eventBus.post(event);
+		jfr.commit();
+	}
+}
@@ -0,0 +1,216 @@
+package com.instaclustr.kongo2;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Java Flight Recorder events for the simulation, in the Kongo category of a recording (e.g. java -XX:StartFlightRecording=filename=kongo.jfr ...).
+ * Phase: a loop phase for one partition (location is its warehouse) or for the whole world (location -1), with the bytes allocated by the thread running it.
+ * Dispatch: a topic post and its handlers. RfidLoad and RfidUnload: the rfid handlers, with the bytes they allocate. Violation: a rule violation published.
+ * Each has the location id, the number of subscribers (goods at the location, or handlers) and the duration.
+ * The per event types are checked with enabled() before an event is made, so when they aren't recorded the hot paths don't allocate or read the clock.
+ */
+
+public class JfrEvents
+{
+	static final EventType PHASE = EventType.getEventType(Phase.class);
+	static final EventType DISPATCH = EventType.getEventType(Dispatch.class);
+	static final EventType RFID_LOAD = EventType.getEventType(RfidLoad.class);
+	static final EventType RFID_UNLOAD = EventType.getEventType(RfidUnload.class);
+	static final EventType VIOLATION = EventType.getEventType(Violation.class);
+
+	static boolean enabled(EventType type)
+	{
+		return type.isEnabled();
+	}
+
+	// location id of an event, -1 if it hasn't got one
+	static int location(Object event)
+	{
+		if (event instanceof SensorFrame)
+			return ((SensorFrame) event).location;
+		if (event instanceof Sensor)
+			return ((Sensor) event).location;
+		if (event instanceof RFIDLoadEvent)
+			return ((RFIDLoadEvent) event).truck;
+		if (event instanceof RFIDUnloadEvent)
+			return ((RFIDUnloadEvent) event).warehouse;
+		if (event instanceof ColocatedCheckEvent)
+			return ((ColocatedCheckEvent) event).truck;
+		if (event instanceof RuleViolationEvent)
+			return ((RuleViolationEvent) event).location;
+		return -1;
+	}
+
+	// a started Dispatch event, commit it when the handlers have run
+	static Dispatch dispatch(Topic topic, Object event, int subscribers)
+	{
+		Dispatch e = new Dispatch();
+		e.topic = topic.identifier();
+		e.eventType = event.getClass().getSimpleName();
+		e.location = location(event);
+		e.subscribers = subscribers;
+		e.begin();
+		return e;
+	}
+
+	// a started Phase event, set events and allocated then commit it when the phase has run
+	static Phase phase(String phase, long hour, int location, int subscribers)
+	{
+		Phase e = new Phase();
+		e.phase = phase;
+		e.hour = hour;
+		e.location = location;
+		e.subscribers = subscribers;
+		e.begin();
+		return e;
+	}
+
+	static void violation(RuleViolationEvent v)
+	{
+		Violation e = new Violation();
+		e.type = v.type.name();
+		e.goods = v.goods;
+		e.location = v.location;
+		e.subscribers = v.location >= 0 && v.location < Simulate.topics.length && Simulate.topics[v.location] != null ? Simulate.topics[v.location].members().size() : 0;
+		e.violated = v.type == RuleViolationEvent.Type.SENSOR ? Rules.violationString(v.violated) : Rules.categoryString(v.violated);
+		e.commit();
+	}
+
+	@Name("com.instaclustr.kongo2.Phase")
+	@Label("Kongo Phase")
+	@Category("Kongo")
+	@Description("A simulation loop phase, for one partition or all of them")
+	@StackTrace(false)
+	static class Phase extends Event
+	{
+		@Label("Phase")
+		String phase;
+
+		@Label("Hour")
+		long hour;
+
+		@Label("Location")
+		@Description("Warehouse location id of the partition, -1 for the whole phase")
+		int location;
+
+		@Label("Subscribers")
+		@Description("Goods at the warehouse, or all goods")
+		int subscribers;
+
+		@Label("Events")
+		long events;
+
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	@Name("com.instaclustr.kongo2.Dispatch")
+	@Label("Kongo Dispatch")
+	@Category("Kongo")
+	@Description("An event posted to a topic and handled by its subscribers")
+	@StackTrace(false)
+	static class Dispatch extends Event
+	{
+		@Label("Topic")
+		String topic;
+
+		@Label("Event Type")
+		String eventType;
+
+		@Label("Location")
+		int location;
+
+		@Label("Subscribers")
+		int subscribers;
+	}
+
+	@Name("com.instaclustr.kongo2.RfidLoad")
+	@Label("Kongo RFID Load")
+	@Category("Kongo")
+	@Description("RFID load handler: goods moved from a warehouse to a truck, and the co-location check")
+	@StackTrace(false)
+	static class RfidLoad extends Event
+	{
+		@Label("Goods")
+		int goods;
+
+		@Label("Location")
+		@Description("Truck location id")
+		int location;
+
+		@Label("From")
+		@Description("Warehouse location id")
+		int from;
+
+		@Label("Subscribers")
+		@Description("Goods on the truck after the load")
+		int subscribers;
+
+		@Label("Conflict")
+		boolean conflict;
+
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	@Name("com.instaclustr.kongo2.RfidUnload")
+	@Label("Kongo RFID Unload")
+	@Category("Kongo")
+	@Description("RFID unload handler: goods moved from a truck to a warehouse")
+	@StackTrace(false)
+	static class RfidUnload extends Event
+	{
+		@Label("Goods")
+		int goods;
+
+		@Label("Location")
+		@Description("Warehouse location id")
+		int location;
+
+		@Label("From")
+		@Description("Truck location id")
+		int from;
+
+		@Label("Subscribers")
+		@Description("Goods at the warehouse after the unload")
+		int subscribers;
+
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	@Name("com.instaclustr.kongo2.Violation")
+	@Label("Kongo Violation")
+	@Category("Kongo")
+	@Description("A rule violation published to the violations topic")
+	@StackTrace(false)
+	static class Violation extends Event
+	{
+		@Label("Type")
+		String type;
+
+		@Label("Goods")
+		int goods;
+
+		@Label("Location")
+		int location;
+
+		@Label("Subscribers")
+		@Description("Goods at the location")
+		int subscribers;
+
+		@Label("Violated")
+		@Description("Violated rules, see Rules")
+		String violated;
+	}
+}
@@ -0,0 +1,200 @@
+package com.instaclustr.kongo2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/*
+ * Append only binary journal of every RFID load, RFID unload and sensor reading event the simulation produces.
+ * Records are fixed width (RECORD bytes) and written with absolute puts into memory mapped segment files of SEGMENT_RECORDS records,
+ * so appending a record doesn't allocate (only mapping the next segment does).
+ * A journal directory has the segments, an index with the first record number of each hour,
+ * and a properties file with the record count and the seed and world parameters, so the world can be created again to replay it.
+ * Appends are synchronized as partitions write in parallel, the records of a SensorFrame are written together.
+ */
+
+public class Journal
+{
+	static final int RECORD = 32;
+	static final int SEGMENT_RECORDS = 1 << 20;
+
+	// record types
+	static final byte LOAD = 1;
+	static final byte UNLOAD = 2;
+	static final byte SENSOR = 3;
+
+	// record layout, byte offsets. LOAD and UNLOAD: goods id, from and to location ids. SENSOR: location id in FROM, metric ordinal and value
+	static final int TIME = 0;
+	static final int GOODS = 8;
+	static final int FROM = 12;
+	static final int TO = 16;
+	static final int TYPE = 20;
+	static final int METRIC = 21;
+	static final int VALUE = 24;
+
+	static final String INDEX = "index.dat";
+	static final String META = "journal.properties";
+
+	final Path dir;
+	final Properties meta = new Properties();	// seed and world parameters, set by the caller
+
+	MappedByteBuffer segment = null;
+	int segmentNumber = -1;
+	int position = SEGMENT_RECORDS;		// record number in the segment, full to start so the first append maps segment 0
+	long records = 0;
+
+	// first record number of each hour
+	long[] hours = new long[64];
+	int numHours = 0;
+
+	public Journal(String dir)
+	{
+		this.dir = Paths.get(dir);
+		try
+		{
+			Files.createDirectories(this.dir);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't create journal directory " + dir, e);
+		}
+	}
+
+	static Path segmentPath(Path dir, int n)
+	{
+		return dir.resolve(String.format("segment-%05d.dat", n));
+	}
+
+	// map the next segment file
+	private void nextSegment()
+	{
+		segmentNumber++;
+		try (FileChannel channel = FileChannel.open(segmentPath(dir, segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RECORD);
+			segment.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't map journal segment " + segmentNumber, e);
+		}
+		position = 0;
+	}
+
+	// byte offset of the next record in the segment
+	private int next()
+	{
+		if (position == SEGMENT_RECORDS)
+			nextSegment();
+		records++;
+		return position++ * RECORD;
+	}
+
+	private void rfid(byte type, long time, int goods, int from, int to)
+	{
+		int at = next();
+		segment.putLong(at + TIME, time);
+		segment.putInt(at + GOODS, goods);
+		segment.putInt(at + FROM, from);
+		segment.putInt(at + TO, to);
+		segment.put(at + TYPE, type);
+		segment.put(at + METRIC, (byte) -1);
+		segment.putDouble(at + VALUE, 0);
+	}
+
+	public synchronized void load(long time, int goods, int warehouse, int truck)
+	{
+		rfid(LOAD, time, goods, warehouse, truck);
+	}
+
+	public synchronized void unload(long time, int goods, int truck, int warehouse)
+	{
+		rfid(UNLOAD, time, goods, truck, warehouse);
+	}
+
+	private void reading(long time, int metric, double value, int location)
+	{
+		int at = next();
+		segment.putLong(at + TIME, time);
+		segment.putInt(at + GOODS, -1);
+		segment.putInt(at + FROM, location);
+		segment.putInt(at + TO, -1);
+		segment.put(at + TYPE, SENSOR);
+		segment.put(at + METRIC, (byte) metric);
+		segment.putDouble(at + VALUE, value);
+	}
+
+	public synchronized void sensor(Sensor sensor)
+	{
+		reading(sensor.time, sensor.metric.ordinal(), sensor.value, sensor.location);
+	}
+
+	// a record per reading in the frame, in metric order
+	public synchronized void frame(SensorFrame frame)
+	{
+		double[] values = frame.values;
+		for (int m = 0; m < values.length; m++)
+			if (!Double.isNaN(values[m]))
+				reading(frame.time, m, values[m], frame.location);
+	}
+
+	// start of an hour of the simulation, hours are numbered from 0
+	public synchronized void hour(long time)
+	{
+		if (numHours == hours.length)
+			hours = Arrays.copyOf(hours, numHours * 2);
+		hours[numHours++] = records;
+	}
+
+	// write the index and properties. The journal can't be appended to after this
+	public synchronized void close()
+	{
+		if (segment != null)
+			segment.force();
+		segment = null;
+		try
+		{
+			// index is the number of hours, the first record of each hour, then the record count
+			ByteBuffer index = ByteBuffer.allocate(Long.BYTES * (numHours + 2)).order(ByteOrder.LITTLE_ENDIAN);
+			index.putLong(numHours);
+			for (int h = 0; h < numHours; h++)
+				index.putLong(hours[h]);
+			index.putLong(records);
+			index.flip();
+			try (FileChannel channel = FileChannel.open(dir.resolve(INDEX), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+			{
+				while (index.hasRemaining())
+					channel.write(index);
+			}
+
+			meta.setProperty("records", Long.toString(records));
+			meta.setProperty("hours", Integer.toString(numHours));
+			meta.setProperty("segments", Integer.toString(segmentNumber + 1));
+			meta.setProperty("segmentRecords", Integer.toString(SEGMENT_RECORDS));
+			meta.setProperty("recordBytes", Integer.toString(RECORD));
+			try (OutputStream out = Files.newOutputStream(dir.resolve(META)))
+			{
+				meta.store(out, "Kongo event journal");
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write journal index " + dir, e);
+		}
+	}
+
+	public long records()
+	{
+		return records;
+	}
+}
@@ -0,0 +1,48 @@
+package com.instaclustr.kongo2;
+
+/*
+ * Topic that hands posted events to the Lanes, the lane for the event location then posts them to a DirectTopic.
+ * Events posted by the handlers themselves (ColocatedCheckEvent, RuleViolationEvent) are posted directly on the lane thread,
+ * so the co-location check for a load is done before the next event on the lane.
+ * Members are changed on the lane threads, so the simulation only reads them after Simulate.drain().
+ */
+
+public class LaneTopic implements Topic
+{
+	final DirectTopic topic;
+	final Lanes lanes;
+
+	public LaneTopic(String identifier, Lanes lanes)
+	{
+		this.topic = new DirectTopic(identifier);
+		this.lanes = lanes;
+	}
+
+	public String identifier()
+	{
+		return topic.identifier();
+	}
+
+	public Members members()
+	{
+		return topic.members();
+	}
+
+	public boolean register(Object subscriber)
+	{
+		return topic.register(subscriber);
+	}
+
+	public boolean unregister(Object subscriber)
+	{
+		return topic.unregister(subscriber);
+	}
+
+	public void post(Object event)
+	{
+		if (lanes.isLane())
+			topic.post(event);
+		else
+			lanes.post(topic, event);
+	}
+}
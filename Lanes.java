@@ -0,0 +1,68 @@
+package com.instaclustr.kongo2;
+
+/*
+ * Serial lanes for LANES dispatch: each lane is a RingBuffer with its own consumer thread, and events are given to the lane of their location,
+ * so the events for a location are handled one at a time in the order they were posted, while different locations are handled in parallel.
+ * RFID events go to the lane of the warehouse, as loading and unloading at a warehouse only changes the goods at it and its docked trucks,
+ * and the co-location check a load causes is run straight away on the same lane. Sensor events go to the lane of their location.
+ * Trucks move between warehouses, so the lanes are drained between phases (see Simulate.runPhase):
+ * the loads onto a truck have been handled before its sensor readings, which may be on another lane.
+ */
+
+public class Lanes
+{
+	final RingBuffer[] lanes;
+
+	public Lanes(int lanes, int capacity, RingBuffer.Producer producer, RingBuffer.Wait wait)
+	{
+		this.lanes = new RingBuffer[Math.max(1, lanes)];
+		for (int i = 0; i < this.lanes.length; i++)
+			this.lanes[i] = new RingBuffer(capacity, producer, wait);
+	}
+
+	// true on a lane thread, i.e. in a handler
+	public boolean isLane()
+	{
+		for (RingBuffer lane : lanes)
+			if (lane.isConsumer())
+				return true;
+		return false;
+	}
+
+	// location the event is ordered by, -1 for events which aren't posted by the simulation
+	static int location(Object event)
+	{
+		if (event instanceof SensorFrame)
+			return ((SensorFrame) event).location;
+		if (event instanceof Sensor)
+			return ((Sensor) event).location;
+		if (event instanceof RFIDLoadEvent)
+			return ((RFIDLoadEvent) event).warehouse;
+		if (event instanceof RFIDUnloadEvent)
+			return ((RFIDUnloadEvent) event).warehouse;
+		return -1;
+	}
+
+	// post event to target on the lane for its location
+	public void post(Topic target, Object event)
+	{
+		int location = location(event);
+		if (location < 0)
+			target.post(event);
+		else
+			lanes[location % lanes.length].post(target, event);
+	}
+
+	// wait until every lane has handled the events posted so far
+	public void drain()
+	{
+		for (RingBuffer lane : lanes)
+			lane.drain();
+	}
+
+	public void close()
+	{
+		for (RingBuffer lane : lanes)
+			lane.close();
+	}
+}
@@ -0,0 +1,37 @@
+package com.instaclustr.kongo2;
+
+import java.util.ArrayList;
+
+/*
+ * Dense int ids for warehouse and truck locations, so events can carry an int rather than the location key String.
+ * Ids are allocated in order of creation starting from 0, and index Simulate.topics and the other per location arrays (see Simulate.newLocation).
+ * The key String is only a label, e.g. for printing.
+ */
+
+public class Locations
+{
+	static final ArrayList<String> keys = new ArrayList<String>();
+	
+	// allocate the next location id for key
+	static int add(String key)
+	{
+		keys.add(key);
+		return keys.size() - 1;
+	}
+	
+	// location key for id, e.g. for printing
+	static String key(int location)
+	{
+		return keys.get(location);
+	}
+	
+	static int size()
+	{
+		return keys.size();
+	}
+	
+	static void clear()
+	{
+		keys.clear();
+	}
+}
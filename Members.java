@@ -0,0 +1,212 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+
+/*
+ * The set of Goods currently at a location (warehouse or truck).
+ * Each Goods remembers its location and its slot in the location array, so add and remove are O(1)
+ * and return false rather than throwing if the Goods is already there or is not there.
+ * Order is not kept, remove moves the last Goods into the gap.
+ * A count of the Goods with each category is kept as Goods come and go, so the categories at a location (e.g. on board a truck)
+ * are known in O(1) for co-location checks, and stay right when only some of the Goods leave.
+ *
+ * Goods are also grouped by their sensor rule signature (Rules.signature), as Goods with the same signature violate the same
+ * rules for a reading. Sensor events are checked once per signature present and only passed on to the Goods in groups that
+ * violate, so the cost of a reading is O(distinct signatures) rather than O(goods) when nothing is wrong.
+ */
+
+public class Members
+{
+	final String location;
+	Goods[] goods = new Goods[8];
+	int size = 0;
+
+	// number of goods here with each category bit, and the mask of the categories with a count > 0
+	final int[] categoryCounts = new int[Rules.NAMES.length];
+	int categories = 0;
+
+	// signature groups, in order of first use. groupOf[signature] is group number + 1, 0 for no group yet.
+	// groups are kept when they become empty, there are at most Rules.NUM_SIGNATURES of them
+	final short[] groupOf = new short[Rules.NUM_SIGNATURES];
+	int numGroups = 0;
+	int[] groupSignature = new int[4];	// a categories mask with the signature
+	Goods[][] groups = new Goods[4][];
+	int[] groupSize = new int[4];		// count of goods with the signature
+	// lower bound of the use by dates in the group, only made exact when the group is checked
+	long[] groupMinUseBy = new long[4];
+
+	public Members(String location)
+	{
+		this.location = location;
+	}
+
+	public boolean contains(Goods g)
+	{
+		return g.location == this;
+	}
+
+	// make room for n more Goods, e.g. when restoring a location with n Goods
+	public void ensureCapacity(int n)
+	{
+		if (size + n > goods.length)
+			goods = Arrays.copyOf(goods, size + n);
+	}
+
+	// add Goods to this location, false if it is already here.
+	// Goods can only be in one place so it is removed from any other location first.
+	public boolean add(Goods g)
+	{
+		if (g.location == this)
+			return false;
+		if (g.location != null)
+			g.location.remove(g);
+		if (size == goods.length)
+			goods = Arrays.copyOf(goods, size * 2);
+		g.location = this;
+		g.slot = size;
+		goods[size++] = g;
+		addCategories(g.categoryMask());
+		addToGroup(g);
+		return true;
+	}
+
+	// remove Goods from this location, false if it is not here
+	public boolean remove(Goods g)
+	{
+		if (g.location != this)
+			return false;
+		Goods last = goods[--size];
+		goods[g.slot] = last;
+		last.slot = g.slot;
+		goods[size] = null;
+		removeCategories(g.categoryMask());
+		removeFromGroup(g);
+		g.location = null;
+		g.slot = -1;
+		return true;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public Goods get(int i)
+	{
+		return goods[i];
+	}
+
+	// categories of all the Goods here
+	public int categories()
+	{
+		return categories;
+	}
+
+	private void addCategories(int mask)
+	{
+		for (int m = mask; m != 0; m &= m - 1)
+		{
+			int bit = Integer.numberOfTrailingZeros(m);
+			categoryCounts[bit]++;
+		}
+		categories |= mask;
+	}
+
+	private void removeCategories(int mask)
+	{
+		for (int m = mask; m != 0; m &= m - 1)
+		{
+			int bit = Integer.numberOfTrailingZeros(m);
+			if (--categoryCounts[bit] == 0)
+				categories &= ~(1 << bit);
+		}
+	}
+
+	private void addToGroup(Goods g)
+	{
+		int sig = Rules.signature(g.categoryMask());
+		int gi = groupOf[sig] - 1;
+		if (gi < 0)
+		{
+			gi = numGroups++;
+			if (gi == groups.length)
+			{
+				int n = gi * 2;
+				groupSignature = Arrays.copyOf(groupSignature, n);
+				groups = Arrays.copyOf(groups, n);
+				groupSize = Arrays.copyOf(groupSize, n);
+				groupMinUseBy = Arrays.copyOf(groupMinUseBy, n);
+			}
+			groupOf[sig] = (short) (gi + 1);
+			groupSignature[gi] = g.categoryMask() & Rules.SENSOR_RULE_CATEGORIES;
+			groups[gi] = new Goods[4];
+			groupMinUseBy[gi] = Long.MAX_VALUE;
+		}
+		Goods[] group = groups[gi];
+		int n = groupSize[gi];
+		if (n == group.length)
+			groups[gi] = group = Arrays.copyOf(group, n * 2);
+		g.groupSlot = n;
+		group[n] = g;
+		groupSize[gi] = n + 1;
+		groupMinUseBy[gi] = Math.min(groupMinUseBy[gi], g.useByDate());
+	}
+
+	private void removeFromGroup(Goods g)
+	{
+		int gi = groupOf[Rules.signature(g.categoryMask())] - 1;
+		Goods[] group = groups[gi];
+		int n = --groupSize[gi];
+		Goods last = group[n];
+		group[g.groupSlot] = last;
+		last.groupSlot = g.groupSlot;
+		group[n] = null;
+		g.groupSlot = -1;
+	}
+
+	// does the group need its Goods checked individually? Yes if its signature violates, or its use by dates may have passed
+	private boolean check(int gi, int violated, long time)
+	{
+		return violated != 0 || (groupSignature[gi] & Rules.PERISHABLE) != 0 && groupMinUseBy[gi] <= time;
+	}
+
+	// recompute the exact minimum use by date of a group that is being checked
+	private void updateMinUseBy(int gi)
+	{
+		Goods[] group = groups[gi];
+		long min = Long.MAX_VALUE;
+		for (int i = 0, n = groupSize[gi]; i < n; i++)
+			min = Math.min(min, group[i].useByDate());
+		groupMinUseBy[gi] = min;
+	}
+
+	// deliver a Sensor event to the Goods in the groups which violate a rule
+	public void sensorEvent(Sensor sensor)
+	{
+		for (int gi = 0; gi < numGroups; gi++)
+		{
+			int n = groupSize[gi];
+			if (n == 0 || !check(gi, Rules.sensorViolations(groupSignature[gi], sensor), sensor.time))
+				continue;
+			Goods[] group = groups[gi];
+			for (int i = 0; i < n; i++)
+				group[i].sensorEvent(sensor);
+			updateMinUseBy(gi);
+		}
+	}
+
+	// deliver a SensorFrame event to the Goods in the groups which violate a rule
+	public void sensorFrameEvent(SensorFrame frame)
+	{
+		for (int gi = 0; gi < numGroups; gi++)
+		{
+			int n = groupSize[gi];
+			if (n == 0 || !check(gi, Rules.sensorFrameViolations(groupSignature[gi], frame), frame.time))
+				continue;
+			Goods[] group = groups[gi];
+			for (int i = 0; i < n; i++)
+				group[i].sensorFrameEvent(frame);
+			updateMinUseBy(gi);
+		}
+	}
+}
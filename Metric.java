@@ -0,0 +1,31 @@
+package com.instaclustr.kongo2;
+
+/*
+ * Sensor metrics measured at warehouse and truck locations, with the names used when printing them.
+ * Sensor events and SensorFrame readings are keyed by metric (ordinal), so a misspelt metric is a compile error.
+ */
+
+public enum Metric
+{
+	TEMP("temp"),
+	HUMIDITY("humidity"),
+	ILLUMINANCE("illuminance"),
+	ACCELERATION("acceleration"),
+	VIBRATION_DISPLACEMENT("vibrationDisplacement"),
+	VIBRATION_VELOCITY("vibrationVelocity"),
+	OZONE("ozone"),
+	PARTICLES("particles"),
+	TOXIC_GAS("toxicGas"),
+	SULFUR_DIOXIDE("sulfurDioxide"),
+	NITROUS_OXIDES("nitrousOxides");
+	
+	// values() makes a new array each call, so keep one
+	static final Metric[] VALUES = values();
+	
+	final String label;
+	
+	Metric(String label)
+	{
+		this.label = label;
+	}
+}
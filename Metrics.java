@@ -0,0 +1,311 @@
+package com.instaclustr.kongo2;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Metrics registry for a simulation run: nanoseconds per phase and event counts by type for each hour, and latency histograms of posting events.
+ * Phase times are wall clock, except TRUCK_SENSORS and WAREHOUSE_SENSORS which are the sensor phase split into its two parts and summed over
+ * the partitions, so in parallel they add up to more than SENSOR. With RING and LANES dispatch a phase includes waiting for the previous phase's events,
+ * and SENSOR waiting for its own at the end of the hour, so the violations are counted in the hour that caused them.
+ * "post" latency is a topic post call as the partitions see it, which is handler completion for direct and Guava dispatch
+ * and just queuing for RING and LANES, which also have "handled" latency from the post to handler completion on the consumer thread.
+ * Bytes allocated per phase are from ThreadMXBean, for the threads running the partitions (and the truck move), so not the RING and LANES handlers.
+ * Written at the end of a run as JSON (totals, per phase, latencies) and CSV (a row per hour), and exported over JMX while running, see MetricsMXBean.
+ * Only updated by the simulation thread, JMX reads the volatile totals.
+ */
+
+public class Metrics implements MetricsMXBean
+{
+	enum Phase
+	{
+		UNLOAD, LOAD, MOVE, SENSOR, TRUCK_SENSORS, WAREHOUSE_SENSORS;
+		static final Phase[] VALUES = values();
+	}
+
+	enum Count
+	{
+		LOADS, UNLOADS, TRUCK_READINGS, WAREHOUSE_READINGS, VIOLATIONS;
+		static final Count[] VALUES = values();
+	}
+
+	// event types for latency
+	enum Post
+	{
+		LOAD, UNLOAD, SENSOR;
+		static final Post[] VALUES = values();
+	}
+
+	static final String NAME = "com.instaclustr.kongo2:type=Metrics";
+	static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	static final boolean ALLOCATION = THREADS instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+	// the current hour
+	final long[] phaseNanos = new long[Phase.VALUES.length];
+	final long[] phaseBytes = new long[Phase.VALUES.length];
+	final long[] counts = new long[Count.VALUES.length];
+
+	// a row per hour finished: hour, phase nanos, phase bytes, counts
+	final ArrayList<long[]> hours = new ArrayList<long[]>();
+	final long[] totalNanos = new long[Phase.VALUES.length];
+	final long[] totalBytes = new long[Phase.VALUES.length];
+	final long[] totalCounts = new long[Count.VALUES.length];
+
+	final LatencyHistogram[] post = histograms();
+	final LatencyHistogram[] handled = histograms();
+
+	long violationsBefore = 0;
+
+	// for JMX
+	volatile long liveHours, liveEvents, liveLastHourNanos, liveWallNanos;
+	volatile long[] liveNanos = new long[Phase.VALUES.length];
+	volatile long[] liveCounts = new long[Count.VALUES.length];
+
+	static LatencyHistogram[] histograms()
+	{
+		LatencyHistogram[] h = new LatencyHistogram[Post.VALUES.length];
+		for (int i = 0; i < h.length; i++)
+			h[i] = new LatencyHistogram();
+		return h;
+	}
+
+	public void phase(Phase phase, long nanos)
+	{
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	public void allocated(Phase phase, long bytes)
+	{
+		phaseBytes[phase.ordinal()] += bytes;
+	}
+
+	static Phase phase(Partition.Phase phase)
+	{
+		switch (phase)
+		{
+			case UNLOAD: return Phase.UNLOAD;
+			case LOAD: return Phase.LOAD;
+			default: return Phase.SENSOR;
+		}
+	}
+
+	// bytes allocated by the current thread so far, 0 if the JVM can't say
+	static long allocatedBytes()
+	{
+		return ALLOCATION ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	public void count(Count count, long n)
+	{
+		counts[count.ordinal()] += n;
+	}
+
+	// add a partition's post latencies, or a ring consumer's handled latencies, at the end of a run
+	public void addPost(LatencyHistogram[] from)
+	{
+		for (int i = 0; i < post.length; i++)
+			post[i].add(from[i]);
+	}
+
+	public void addHandled(LatencyHistogram[] from)
+	{
+		for (int i = 0; i < handled.length; i++)
+			handled[i].add(from[i]);
+	}
+
+	// end of an hour, violations is the number published so far
+	public void endHour(long hour, long violations)
+	{
+		counts[Count.VIOLATIONS.ordinal()] = violations - violationsBefore;
+		violationsBefore = violations;
+
+		long[] row = new long[1 + 2 * phaseNanos.length + counts.length];
+		row[0] = hour;
+		System.arraycopy(phaseNanos, 0, row, 1, phaseNanos.length);
+		System.arraycopy(phaseBytes, 0, row, 1 + phaseNanos.length, phaseBytes.length);
+		System.arraycopy(counts, 0, row, 1 + 2 * phaseNanos.length, counts.length);
+		hours.add(row);
+
+		long wall = 0;
+		for (int p = 0; p < phaseNanos.length; p++)
+		{
+			totalNanos[p] += phaseNanos[p];
+			totalBytes[p] += phaseBytes[p];
+		}
+		for (int p = 0; p <= Phase.SENSOR.ordinal(); p++)
+			wall += phaseNanos[p];
+		long events = 0;
+		for (int c = 0; c < counts.length; c++)
+		{
+			totalCounts[c] += counts[c];
+			if (c != Count.VIOLATIONS.ordinal())
+				events += counts[c];
+		}
+		Arrays.fill(phaseNanos, 0);
+		Arrays.fill(phaseBytes, 0);
+		Arrays.fill(counts, 0);
+
+		liveNanos = totalNanos.clone();
+		liveCounts = totalCounts.clone();
+		liveLastHourNanos = wall;
+		liveWallNanos += wall;
+		liveEvents += events;
+		liveHours = hours.size();
+	}
+
+	// wall clock nanos of the phases, i.e. not the sensor phase parts
+	long wallNanos()
+	{
+		long wall = 0;
+		for (int p = 0; p <= Phase.SENSOR.ordinal(); p++)
+			wall += totalNanos[p];
+		return wall;
+	}
+
+	public String summary()
+	{
+		StringBuilder s = new StringBuilder();
+		long wall = wallNanos();
+		for (Phase p : Phase.VALUES)
+			s.append(String.format(Locale.ROOT, "Phase %s = %.3f ms (%.1f%%), allocated %.2f MB%n", p, totalNanos[p.ordinal()] / 1e6, wall == 0 ? 0 : 100.0 * totalNanos[p.ordinal()] / wall, totalBytes[p.ordinal()] / (1024.0 * 1024.0)));
+		for (Count c : Count.VALUES)
+			s.append("Count " + c + " = " + totalCounts[c.ordinal()] + "\n");
+		for (Post p : Post.VALUES)
+		{
+			s.append("Post " + p + " latency: " + post[p.ordinal()].toStr(1000, "us") + "\n");
+			if (handled[p.ordinal()].count() > 0)
+				s.append("Handled " + p + " latency: " + handled[p.ordinal()].toStr(1000, "us") + "\n");
+		}
+		return s.toString();
+	}
+
+	// prefix.json and prefix.csv
+	public void write(String prefix)
+	{
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(prefix + ".csv"))))
+		{
+			StringBuilder header = new StringBuilder("hour");
+			for (Phase p : Phase.VALUES)
+				header.append(",").append(p.name().toLowerCase(Locale.ROOT)).append("_ns");
+			for (Phase p : Phase.VALUES)
+				header.append(",").append(p.name().toLowerCase(Locale.ROOT)).append("_bytes");
+			for (Count c : Count.VALUES)
+				header.append(",").append(c.name().toLowerCase(Locale.ROOT));
+			out.println(header);
+			for (long[] row : hours)
+			{
+				StringBuilder line = new StringBuilder();
+				for (int i = 0; i < row.length; i++)
+					line.append(i == 0 ? "" : ",").append(row[i]);
+				out.println(line);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write metrics " + prefix + ".csv", e);
+		}
+
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(prefix + ".json"))))
+		{
+			out.println("{");
+			out.println("  \"hours\": " + hours.size() + ",");
+			out.println("  \"events\": " + liveEvents + ",");
+			out.println(String.format(Locale.ROOT, "  \"eventsPerSecond\": %.1f,", getEventsPerSecond()));
+			out.println("  \"phaseNanos\": {" + join(Phase.VALUES, totalNanos) + "},");
+			out.println("  \"phaseAllocatedBytes\": {" + join(Phase.VALUES, totalBytes) + "},");
+			out.println("  \"counts\": {" + join(Count.VALUES, totalCounts) + "},");
+			out.println("  \"postLatencyNanos\": {" + latencies(post) + "},");
+			out.println("  \"handledLatencyNanos\": {" + latencies(handled) + "}");
+			out.println("}");
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write metrics " + prefix + ".json", e);
+		}
+	}
+
+	static String join(Enum<?>[] keys, long[] values)
+	{
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < keys.length; i++)
+			s.append(i == 0 ? "" : ", ").append("\"").append(keys[i].name()).append("\": ").append(values[i]);
+		return s.toString();
+	}
+
+	static String latencies(LatencyHistogram[] h)
+	{
+		StringBuilder s = new StringBuilder();
+		for (Post p : Post.VALUES)
+		{
+			LatencyHistogram l = h[p.ordinal()];
+			s.append(p.ordinal() == 0 ? "" : ", ").append("\"").append(p.name()).append("\": ")
+				.append(String.format(Locale.ROOT, "{\"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}",
+					l.count(), l.mean(), l.percentile(50), l.percentile(90), l.percentile(99), l.percentile(99.9), l.max()));
+		}
+		return s.toString();
+	}
+
+	// register with the platform MBean server, replacing a registry from an earlier run
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		}
+		catch (JMException e)
+		{
+			System.err.println("Metrics not exported over JMX: " + e);
+		}
+	}
+
+	public void unregister()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		}
+		catch (JMException e)
+		{
+			System.err.println("Metrics not unregistered from JMX: " + e);
+		}
+	}
+
+	public long getHours() { return liveHours; }
+	public long getEvents() { return liveEvents; }
+	public long getLoads() { return liveCounts[Count.LOADS.ordinal()]; }
+	public long getUnloads() { return liveCounts[Count.UNLOADS.ordinal()]; }
+	public long getTruckReadings() { return liveCounts[Count.TRUCK_READINGS.ordinal()]; }
+	public long getWarehouseReadings() { return liveCounts[Count.WAREHOUSE_READINGS.ordinal()]; }
+	public long getViolations() { return liveCounts[Count.VIOLATIONS.ordinal()]; }
+
+	public long getUnloadNanos() { return liveNanos[Phase.UNLOAD.ordinal()]; }
+	public long getLoadNanos() { return liveNanos[Phase.LOAD.ordinal()]; }
+	public long getMoveNanos() { return liveNanos[Phase.MOVE.ordinal()]; }
+	public long getSensorNanos() { return liveNanos[Phase.SENSOR.ordinal()]; }
+	public long getLastHourNanos() { return liveLastHourNanos; }
+
+	public double getEventsPerSecond()
+	{
+		long wall = liveWallNanos;
+		return wall == 0 ? 0 : liveEvents * 1e9 / wall;
+	}
+}
@@ -0,0 +1,25 @@
+package com.instaclustr.kongo2;
+
+/*
+ * JMX view of the simulation Metrics, registered as com.instaclustr.kongo2:type=Metrics so long runs can be watched live (e.g. with jconsole).
+ * Totals are for the hours finished so far, times are in nanoseconds.
+ */
+
+public interface MetricsMXBean
+{
+	long getHours();
+	long getEvents();
+	long getLoads();
+	long getUnloads();
+	long getTruckReadings();
+	long getWarehouseReadings();
+	long getViolations();
+
+	long getUnloadNanos();
+	long getLoadNanos();
+	long getMoveNanos();
+	long getSensorNanos();
+	long getLastHourNanos();
+
+	double getEventsPerSecond();
+}
@@ -0,0 +1,356 @@
+package com.instaclustr.kongo2;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * The simulation work for one warehouse and the trucks docked at it.
+ * Unloading, loading and sensor events only ever touch the Goods at the warehouse and at its docked trucks,
+ * so partitions are independent and the unload, load and sensor phases of Simulate.loop can run them in parallel.
+ * Each partition has its own random number stream split from the Simulate master stream,
+ * so a partition makes the same choices whether partitions are run sequentially or in parallel.
+ * Trucks moving between warehouses (i.e. between partitions) is done sequentially at the hour boundary.
+ * The goods at a location are read once at the start of a phase, not as the handlers move them,
+ * so the phases don't depend on events being handled as they are posted (RING dispatch handles them on another thread).
+ */
+
+public class Partition
+{
+	enum Phase { UNLOAD, LOAD, SENSOR }
+
+	final Warehouses warehouse;
+	final SplittableRandom rand;
+	long events = 0;	// events produced by the current phase
+
+	// for Simulate.metrics: events by type, sensor phase part nanos and bytes allocated for the current phase, and post latencies for the run
+	final long[] counts = new long[Metrics.Count.VALUES.length];
+	final long[] nanos = new long[Metrics.Phase.VALUES.length];
+	final long[] allocated = new long[Metrics.Phase.VALUES.length];
+	final LatencyHistogram[] latency = Metrics.histograms();
+
+	// events are reused, handlers only read an event while it is being posted (RING and LANES copy it)
+	final RFIDUnloadEvent unloadEvent = new RFIDUnloadEvent();
+	final RFIDLoadEvent loadEvent = new RFIDLoadEvent();
+	final SensorFrame frame = new SensorFrame(0, -1);
+	final Sensor sensor = new Sensor(0, Metric.TEMP, 0, -1);
+
+	// goods at a location when the phase started, and the categories on board each docked truck by dock slot as the load phase goes
+	Goods[] snapshot = new Goods[16];
+	int[] truckCategories = new int[4];
+
+	public Partition(Warehouses warehouse, SplittableRandom rand)
+	{
+		this.warehouse = warehouse;
+		this.rand = rand;
+	}
+
+	// recorded as a JfrEvents.Phase for the partition
+	public void run(Phase phase, long time)
+	{
+		JfrEvents.Phase jfr = JfrEvents.enabled(JfrEvents.PHASE) ? JfrEvents.phase(phase.name(), time, warehouse.locationId, Simulate.topics[warehouse.locationId].members().size()) : null;
+		long events0 = events;
+		long bytes = Metrics.allocatedBytes();
+		switch (phase)
+		{
+			case UNLOAD: unload(time); break;
+			case LOAD: load(time); break;
+			case SENSOR: sensors(time); break;
+		}
+		bytes = Metrics.allocatedBytes() - bytes;
+		allocated[Metrics.phase(phase).ordinal()] += bytes;
+		if (jfr != null)
+		{
+			jfr.events = events - events0;
+			jfr.allocated = bytes;
+			jfr.commit();
+		}
+	}
+
+	// 1 UNLOAD trucks: move goods from trucks docked at this warehouse to the warehouse
+	void unload(long time)
+	{
+		Docks docks = warehouse.docks;
+		for (int d = 0; d < docks.size(); d++)
+			unload(docks.get(d), time);
+	}
+
+	// unload all Goods that are in truck t, docked here, last first, the unload event handler removes each one from the truck
+	void unload(Trucks t, long time)
+	{
+		int warehouseId = warehouse.locationId;
+		for (int i = snapshot(Simulate.topics[t.locationId].members()) - 1; i >= 0; i--)
+		{
+			Goods g = snapshot[i];
+
+			// change location of goods to warehouse
+			Simulate.goodsInTrucks[g.id] = -1;
+			Simulate.goodsInWarehouses[g.id] = warehouseId;
+			if (Simulate.debug) System.out.println("Unloaded " + g.tag() + " from " + t.id + " at " + warehouse.id);
+
+			// generate UNLOAD RFID event: At time, unload goods from truck at warehouse
+			if (Simulate.verbose) System.out.println(time + " RFID " + warehouse.id + ": UNLOAD " +  g.tag() + " from " + t.id);
+
+			RFIDUnloadEvent ule = unloadEvent;
+			ule.time = time;
+			ule.goods = g.id;
+			ule.truck = t.locationId;
+			ule.warehouse = warehouseId;
+			if (Simulate.journal != null) Simulate.journal.unload(time, g.id, t.locationId, warehouseId);
+			long t0 = System.nanoTime();
+			Simulate.rfidUnloadTopic.post(ule);
+			latency[Metrics.Post.UNLOAD.ordinal()].record(System.nanoTime() - t0);
+
+			events++;
+			counts[Metrics.Count.UNLOADS.ordinal()]++;
+		}
+	}
+
+	// copy the goods at a location to snapshot, returns how many
+	int snapshot(Members members)
+	{
+		int n = members.size();
+		if (n > snapshot.length)
+			snapshot = new Goods[Math.max(n, snapshot.length * 2)];
+		for (int i = 0; i < n; i++)
+			snapshot[i] = members.get(i);
+		return n;
+	}
+
+	// 2 LOAD Goods from warehouse to trucks currently docked at warehouse
+	void load(long time)
+	{
+		int warehouseId = warehouse.locationId;
+		Docks docks = warehouse.docks;
+		if (docks.size() > truckCategories.length)
+			truckCategories = new int[docks.size() * 2];
+		for (int d = 0; d < docks.size(); d++)
+			truckCategories[d] = docks.get(d).categoriesOnBoard();
+
+		// go backwards, the order goods were visited in when the loading handler moved the last Goods into the slot of the loaded one
+		for (int i = snapshot(Simulate.topics[warehouseId].members()) - 1; i >= 0; i--)
+		{
+			Goods g = snapshot[i];
+
+			// randomly decide if we want to load this good, check if there is a truck at the warehouse, load it, remove it from warehouse
+			if (Simulate.debug) System.out.println("Found goods " + g.tag() + " in " + warehouse.id + " try and load it? ");
+			if (rand.nextDouble() > 0.5)
+			{
+				// pick 1 of the trucks docked at the warehouse at random
+				Trucks t = docks.random(rand);
+
+				// if a truck was found...
+				if (t != null)
+				{
+					if (Simulate.debug) System.out.println("Found a truck at warehouse " + t.id);
+					if (load(g, t, truckCategories[t.dockSlot], time))
+						truckCategories[t.dockSlot] |= g.categoryMask() & Rules.TRUCK_CATEGORIES;
+				}
+			}
+		}
+	}
+
+	// load Goods from warehouse onto truck t, docked here, each with the same chance as load(time) gives it
+	void load(Trucks t, long time)
+	{
+		int onBoard = t.categoriesOnBoard();
+		for (int i = snapshot(Simulate.topics[warehouse.locationId].members()) - 1; i >= 0; i--)
+		{
+			Goods g = snapshot[i];
+			if (rand.nextDouble() > 0.5 && load(g, t, onBoard, time))
+				onBoard |= g.categoryMask() & Rules.TRUCK_CATEGORIES;
+		}
+	}
+
+	// load g onto truck t with categories onBoard, unless the rules being enforced don't allow it. true if it was loaded
+	boolean load(Goods g, Trucks t, int onBoard, long time)
+	{
+		int warehouseId = warehouse.locationId;
+		// load truck, remove goods from warehouse
+		// can we load the Goods onto it?
+		boolean load = false;
+		load = g.allowedInTruck(onBoard);
+
+		if (Simulate.verbose && load) System.out.println("Goods allowed in truck, goods cats=" + g.allCategories() + " no conflict with truck cats=" + Rules.categoryString(onBoard));
+		else if (Simulate.verbose && !load) System.out.println("Goods NOT ALLOWED in truck, goods cats=" + g.allCategories() + " conflict with truck cats=" + Rules.categoryString(onBoard));
+
+		// keep loading if we can load it or we don't care about enforcing rules
+		if (!Simulate.enforceHazardousRules || Simulate.enforceHazardousRules && load)
+		{
+			// check temperature control rules
+			if (load = g.truckTempRules(t))
+				if (Simulate.verbose) System.out.println("Goods allowed on truck for temperature rules check");
+				else if (Simulate.verbose) System.out.println("Goods NOT ALLOWED on truck for temperature rules check");
+
+			if (!Simulate.enforceTempRules || Simulate.enforceTempRules && load)
+			{
+				Simulate.goodsInWarehouses[g.id] = -1;
+				Simulate.goodsInTrucks[g.id] = t.locationId;
+				if (Simulate.debug) System.out.println("Loading " + g.tag() + " onto " + t.id);
+
+				// generate RFID LOAD event
+				if (Simulate.verbose) System.out.println(time + " RFID " + warehouse.id + ": LOAD " +  g.tag() + " onto " + t.id);
+
+				RFIDLoadEvent le = loadEvent;
+				le.time = time;
+				le.goods = g.id;
+				le.warehouse = warehouseId;
+				le.truck = t.locationId;
+				if (Simulate.journal != null) Simulate.journal.load(time, g.id, warehouseId, t.locationId);
+				long t0 = System.nanoTime();
+				Simulate.rfidLoadTopic.post(le);
+				latency[Metrics.Post.LOAD.ordinal()].record(System.nanoTime() - t0);
+
+				events++;
+				counts[Metrics.Count.LOADS.ordinal()]++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 4 SENSOR stream, simple version, each warehouse and truck produce only out one value per sensor metric per location per hour.
+	// The readings for a location are collected in a SensorFrame, which is posted as one event (Simulate.sensorFrames)
+	// or as one Sensor event per metric.
+	void sensors(long time)
+	{
+		long t0 = System.nanoTime();
+
+		// Truck SENSOR stream for trucks docked here, and on the road to here
+		truckSensors(warehouse.docks, time);
+		truckSensors(warehouse.inbound, time);
+		long t1 = System.nanoTime();
+		nanos[Metrics.Phase.TRUCK_SENSORS.ordinal()] += t1 - t0;
+
+		warehouseSensors(time);
+		nanos[Metrics.Phase.WAREHOUSE_SENSORS.ordinal()] += System.nanoTime() - t1;
+	}
+
+	// a sensor frame for each truck in docks
+	void truckSensors(Docks docks, long time)
+	{
+		for (int d = 0; d < docks.size(); d++)
+			truckSensors(docks.get(d), time);
+	}
+
+	// a sensor frame for truck, docked here or on the road to here
+	void truckSensors(Trucks truck, long time)
+	{
+		// find the topic corresponding to the location of the truck
+		Topic topic = Simulate.topics[truck.locationId];
+
+		if (topic != null)
+		{
+			frame.reset(time, truck.locationId);
+			frame.set(Metric.TEMP, truck.temp.randomTempInRange(rand));
+			frame.set(Metric.HUMIDITY, randBetween(0, 100));
+
+			// lux https://en.wikipedia.org/wiki/Lux range 0 - 100,000 (direct sunlight), 500 is office lighting, unit is lux
+			frame.set(Metric.ILLUMINANCE, randBetween(0, 100000));
+
+			// acceleration, in standard gravities i.e. 0, 1, 100? Normal should be < 1g? fast car accel if about 0.5g
+			// roller coaster is 3-4g
+			// car https://physics.info/acceleration/ F1 could be up to 3g! A truck should be < 1g
+			frame.set(Metric.ACCELERATION, randBetween(0, 100));
+
+			// vibration has amplitude and frequency (but sensors produce data for multiple frequencies!)
+			// freq is Hz (0-100000), amp is ms-2 (0-?)
+			frame.set(Metric.VIBRATION_DISPLACEMENT, randBetween(0, 1000));
+			frame.set(Metric.VIBRATION_VELOCITY, randBetween(0, 1000));
+
+			post(topic, frame, Metrics.Count.TRUCK_READINGS);
+		}
+	}
+
+	// a sensor frame for the warehouse
+	void warehouseSensors(long time)
+	{
+		// Warehouse SENSOR stream
+		// posts sensor events to correct warehouse location topic
+		// find the topic corresponding to the warehouse location
+		Topic topic = Simulate.topics[warehouse.locationId];
+		if (topic != null)
+		{
+			frame.reset(time, warehouse.locationId);
+			frame.set(Metric.TEMP, warehouse.temp.randomTempInRange(rand));
+			frame.set(Metric.HUMIDITY, randBetween(0, 100));
+			frame.set(Metric.ILLUMINANCE, randBetween(0, 100000));
+
+			// Nasty gases: ozone, particulate matter, toxic gas (Propane, Butane, LPG and Carbon Monoxide.), sulfur dioxide, and nitrous oxide
+			frame.set(Metric.OZONE, randBetween(0, 10000));
+			frame.set(Metric.PARTICLES, randBetween(0, 10000));
+			frame.set(Metric.TOXIC_GAS, randBetween(0, 10000));
+			frame.set(Metric.SULFUR_DIOXIDE, randBetween(0, 10));
+			frame.set(Metric.NITROUS_OXIDES, randBetween(0, 10));
+
+			post(topic, frame, Metrics.Count.WAREHOUSE_READINGS);
+		}
+	}
+
+	// post the frame as one event, or as a Sensor event per reading. Events are counted and journaled per reading either way
+	void post(Topic topic, SensorFrame frame, Metrics.Count readings)
+	{
+		if (Simulate.journal != null) Simulate.journal.frame(frame);
+		LatencyHistogram sensorLatency = latency[Metrics.Post.SENSOR.ordinal()];
+		if (Simulate.sensorFrames)
+		{
+			long t0 = System.nanoTime();
+			topic.post(frame);
+			sensorLatency.record(System.nanoTime() - t0);
+		}
+		else
+			for (Metric m : Metric.VALUES)
+				if (frame.has(m))
+				{
+					sensor.time = frame.time;
+					sensor.metric = m;
+					sensor.value = frame.get(m);
+					sensor.location = frame.location;
+					long t0 = System.nanoTime();
+					topic.post(sensor);
+					sensorLatency.record(System.nanoTime() - t0);
+				}
+		events += frame.readings;
+		counts[readings.ordinal()] += frame.readings;
+	}
+
+	double randBetween(double min, double max)
+	{
+		return (rand.nextDouble() * (max-min)) + min;
+	}
+
+	// fork join task running a phase for a range of partitions, splits in half until there are few enough partitions to run
+	static class PhaseTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		static final int THRESHOLD = 4;
+
+		final List<Partition> partitions;
+		final int from, to;
+		final Phase phase;
+		final long time;
+
+		PhaseTask(List<Partition> partitions, int from, int to, Phase phase, long time)
+		{
+			this.partitions = partitions;
+			this.from = from;
+			this.to = to;
+			this.phase = phase;
+			this.time = time;
+		}
+
+		protected void compute()
+		{
+			if (to - from <= THRESHOLD)
+			{
+				for (int i = from; i < to; i++)
+					partitions.get(i).run(phase, time);
+			}
+			else
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new PhaseTask(partitions, from, mid, phase, time), new PhaseTask(partitions, mid, to, phase, time));
+			}
+		}
+	}
+}
@@ -1,24 +1,23 @@
 package com.instaclustr.kongo2;
 
-import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
-// at time LOAD goodsKey at warehouseKey onto truckKey
+// at time LOAD goods at warehouse onto truck. goods is a Goods id, warehouse and truck are location ids
 public class RFIDLoadEvent
 {
 	static boolean debug = false;
 	
 	long time; 
-	String warehouseKey;
-	String goodsKey;
-	String truckKey;
+	int warehouse;
+	int goods;
+	int truck;
 	
-	public RFIDLoadEvent(long time, String goodsKey, String warehouseKey, String truckKey)
+	public RFIDLoadEvent(long time, int goods, int warehouse, int truck)
 	{
 		this.time = time;
-		this.goodsKey = goodsKey;
-		this.warehouseKey = warehouseKey;
-		this.truckKey = truckKey;
+		this.goods = goods;
+		this.warehouse = warehouse;
+		this.truck = truck;
 	}
 	
 	
@@ -26,52 +25,74 @@ public class RFIDLoadEvent
 	{
 	}
 	
-	// event handler
+	// event handler, recorded as a JfrEvents.RfidLoad
 	@Subscribe
 	public void rfidLoadEvent(RFIDLoadEvent event)
 	{
-		// at time LOAD goodsKey at warehouseKey onto truckKey
+		if (!JfrEvents.enabled(JfrEvents.RFID_LOAD))
+		{
+			load(event);
+			return;
+		}
+		JfrEvents.RfidLoad jfr = new JfrEvents.RfidLoad();
+		jfr.goods = event.goods;
+		jfr.location = event.truck;
+		jfr.from = event.warehouse;
+		long allocated = Metrics.allocatedBytes();
+		jfr.begin();
+		jfr.conflict = load(event);
+		jfr.allocated = Metrics.allocatedBytes() - allocated;
+		jfr.subscribers = Simulate.topics[event.truck].members().size();
+		jfr.commit();
+	}
+	
+	// move the goods and check co-location, returns true if there was a conflict
+	boolean load(RFIDLoadEvent event)
+	{
+		// at time LOAD goods at warehouse onto truck
 		if (debug) System.out.println("RFID Load " + event);
 		
-		String locFrom = event.warehouseKey;
-		String locTo = event.truckKey;
+		int locFrom = event.warehouse;
+		int locTo = event.truck;
 		
 		// to move the goods need to get the Goods object itself
-		// where is Goods now? claims to be at warehouseKey
-		EventBus topicFrom = Simulate.topics.get(locFrom);
+		// where is Goods now? claims to be at warehouse
+		Topic topicFrom = Simulate.topics[locFrom];
 		
-		// This requires access to the global list of allGoods - nasty?!
-		Goods goods = Simulate.allGoods.get(event.goodsKey);
+		// This requires access to the global goods store
+		Goods goods = Simulate.goodsStore.get(event.goods);
 		
 		// unregister goods from warehouse topic location
 		if (debug) System.out.println("unregister from warehouse " + topicFrom.identifier());
 
-		try
-		{
-			topicFrom.unregister(goods);
-		}
-		catch (Exception e)
+		// membership move is O(1) and returns false rather than throwing if the goods is not there
+		if (!topicFrom.unregister(goods))
 		{
-			// TODO Produce violation event rather than print this out
-			System.out.println("LOAD EVENT Violation: Goods= " + event.goodsKey + " could not be loaded from warehouse location " + locFrom);
+			Simulate.violation(RuleViolationEvent.move(RuleViolationEvent.Type.LOAD, event.time, event.goods, locFrom));
 		}
 		
 		// change location
-		EventBus topicTo = Simulate.topics.get(locTo);
+		Topic topicTo = Simulate.topics[locTo];
 		if (debug) System.out.println("register with truck " + topicTo.identifier());
 		
 		// TODO Should also check that truck is really at same location as warehouse and produce violation if not, this is a business rule.
 		
+		// co-location check, O(1) against the category counts of the goods already on board (see Members) before the goods joins them.
+		// Only if there is a conflict are the goods on board asked to check themselves, which names the conflicting goods.
+		boolean conflict = Simulate.checkGoods && !goods.allowedInTruck(topicTo.members().categories());
+		
 		topicTo.register(goods);
 			
-		if (debug) System.out.println("post co-location event to " + topicTo.identifier());
-		
-		ColocatedCheckEvent ce = new ColocatedCheckEvent(time, event.goodsKey, event.truckKey);
-		
-		// Whoops, Goods have already been moved to the truck so will receive the check event themselves, better to move after checking!?
-		
-		// send this event to the location topics as all goods at the truck location will need to be check their rules.
-		topicTo.post(ce);			
-		
+		if (conflict)
+		{
+			if (debug) System.out.println("post co-location event to " + topicTo.identifier());
+			
+			ColocatedCheckEvent ce = new ColocatedCheckEvent(time, event.goods, event.truck);
+			
+			// send this event to the location topic as all goods at the truck location will need to be check their rules.
+			// the goods being loaded is on board now too, but doesn't check against itself
+			topicTo.post(ce);
+		}
+		return conflict;
 	}
 }
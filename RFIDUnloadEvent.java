@@ -3,26 +3,25 @@ package com.instaclustr.kongo2;
 // Note that we really don't need 2 different implementations for RFID events. Could just have one RFIDEvent class with both methods, and 
 // two implementation classes for Load and Unload with no further stuff in them.
 
-import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
-// at time UNLOAD goodsKey from truckKey to warehouseKey
+// at time UNLOAD goods from truck to warehouse. goods is a Goods id, truck and warehouse are location ids
 public class RFIDUnloadEvent
 {
 	
 	static boolean debug = false;
 	
 	long time; 
-	String warehouseKey;
-	String goodsKey;
-	String truckKey;
+	int warehouse;
+	int goods;
+	int truck;
 	
-	public RFIDUnloadEvent(long time, String goodsKey, String truckKey, String warehouseKey)
+	public RFIDUnloadEvent(long time, int goods, int truck, int warehouse)
 	{
 		this.time = time;
-		this.goodsKey = goodsKey;
-		this.warehouseKey = warehouseKey;
-		this.truckKey = truckKey;
+		this.goods = goods;
+		this.warehouse = warehouse;
+		this.truck = truck;
 	}
 	
 	
@@ -31,37 +30,53 @@ public class RFIDUnloadEvent
 	}
 	
 	// handler to unload moves goods from truck to warehouse no checking done so just state change event
+	// recorded as a JfrEvents.RfidUnload
 	@Subscribe
 	public void rfidUnloadEvent(RFIDUnloadEvent event)
 	{
-		// at time UNLOAD goodsKey from truckKey to warehouseKey
-		if (debug) System.out.println("RFID UNLOAD Goods=" + event.goodsKey + " from truck " + event.truckKey + " to warehouse " + event.warehouseKey);
+		if (!JfrEvents.enabled(JfrEvents.RFID_UNLOAD))
+		{
+			unload(event);
+			return;
+		}
+		JfrEvents.RfidUnload jfr = new JfrEvents.RfidUnload();
+		jfr.goods = event.goods;
+		jfr.location = event.warehouse;
+		jfr.from = event.truck;
+		long allocated = Metrics.allocatedBytes();
+		jfr.begin();
+		unload(event);
+		jfr.allocated = Metrics.allocatedBytes() - allocated;
+		jfr.subscribers = Simulate.topics[event.warehouse].members().size();
+		jfr.commit();
+	}
+	
+	void unload(RFIDUnloadEvent event)
+	{
+		// at time UNLOAD goods from truck to warehouse
+		if (debug) System.out.println("RFID UNLOAD Goods=" + event.goods + " from truck " + Locations.key(event.truck) + " to warehouse " + Locations.key(event.warehouse));
 		
-		String locFrom = event.truckKey;
-		String locTo = event.warehouseKey;
+		int locFrom = event.truck;
+		int locTo = event.warehouse;
 		
 		// to move the goods need to get the Goods object itself
-		// where is Goods now? claims to be at truckKey
-		EventBus topicFrom = Simulate.topics.get(locFrom);
+		// where is Goods now? claims to be at truck
+		Topic topicFrom = Simulate.topics[locFrom];
 		
-		// This requires access to the global list of allGoods
-		Goods goods = Simulate.allGoods.get(event.goodsKey);
+		// This requires access to the global goods store
+		Goods goods = Simulate.goodsStore.get(event.goods);
 		
 		// unregister goods from truck topic location
 		if (debug) System.out.println("unregister from truck " + topicFrom.identifier());
 		
-		try 
-		{
-			topicFrom.unregister(goods);
-		}
-		catch (Exception e)
+		// membership move is O(1) and returns false rather than throwing if the goods is not there
+		if (!topicFrom.unregister(goods))
 		{
-			// TODO Produce violation event
-			System.out.println("UNLOAD EVENT Violation: Goods= " + event.goodsKey + " could not be unloaded from truck location " + event.truckKey);
+			Simulate.violation(RuleViolationEvent.move(RuleViolationEvent.Type.UNLOAD, event.time, event.goods, locFrom));
 		}
 		
 		// change location
-		EventBus topicTo = Simulate.topics.get(locTo);
+		Topic topicTo = Simulate.topics[locTo];
 		if (debug) System.out.println("register with warehouse " + topicTo.identifier());
 		topicTo.register(goods);
 	}
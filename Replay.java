@@ -0,0 +1,261 @@
+package com.instaclustr.kongo2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/*
+ * Replays a Journal through the topics as fast as possible, to measure and tune the rules checking on its own,
+ * without world generation, random choices and truck movement.
+ * The world is created again from the seed and parameters in the journal, then each record is posted as the event the simulation posted:
+ * RFIDLoadEvent and RFIDUnloadEvent to the rfid topics (updating where the goods are, as the simulation does), and sensor readings to their location topic as a SensorFrame or as Sensor events.
+ * The replay gives the same violations and world state as the live run, and checks them against the journal, so it can be used as a regression test.
+ * Reports events/s and the latency percentiles of posting an event, which includes the handlers it runs for direct and Guava dispatch
+ * but is just queuing for RING and LANES, so for those the latency from the post to the handler finishing on the consumer thread is reported too.
+ * Events are reused, handlers only read an event while it is being posted.
+ */
+
+public class Replay
+{
+	final Path dir;
+	final Properties meta = new Properties();
+	final long records;
+	final int hours;
+	final long[] hourStart;		// first record of each hour, then the record count
+	final boolean sensorFrames;
+
+	final LatencyHistogram latency = new LatencyHistogram();
+	long events = 0;
+	byte lastType = 0;
+
+	// reused events
+	final RFIDLoadEvent load = new RFIDLoadEvent();
+	final RFIDUnloadEvent unload = new RFIDUnloadEvent();
+	final Sensor sensor = new Sensor(0, Metric.TEMP, 0, -1);
+	final SensorFrame frame = new SensorFrame(0, -1);
+
+	public Replay(String dir)
+	{
+		this.dir = Paths.get(dir);
+		try (InputStream in = Files.newInputStream(this.dir.resolve(Journal.META)))
+		{
+			meta.load(in);
+			MappedByteBuffer index = map(this.dir.resolve(Journal.INDEX));
+			hours = (int) index.getLong(0);
+			hourStart = new long[hours + 1];
+			for (int h = 0; h <= hours; h++)
+				hourStart[h] = index.getLong(Long.BYTES * (h + 1));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't read journal " + dir, e);
+		}
+		records = Long.parseLong(meta.getProperty("records"));
+		sensorFrames = Boolean.parseBoolean(meta.getProperty("sensorFrames"));
+	}
+
+	static MappedByteBuffer map(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path))
+		{
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			return b;
+		}
+	}
+
+	int intMeta(String key)
+	{
+		return Integer.parseInt(meta.getProperty(key));
+	}
+
+	// create the world the journal was recorded from
+	public void createWorld()
+	{
+		Simulate.reset();
+		Simulate.setSeed(Long.parseLong(meta.getProperty("seed")));
+		Simulate.sensorFrames = sensorFrames;
+		Simulate.checkGoods = Boolean.parseBoolean(meta.getProperty("checkGoods", "true"));
+		Simulate.verbose = false;
+		// a run on a restored world recorded the snapshot
+		if (meta.getProperty("snapshot") != null)
+			Snapshot.restore(meta.getProperty("snapshot"));
+		else
+			Simulate.createWorld(intMeta("goods"), intMeta("maxX"), intMeta("maxY"), intMeta("trucks"));
+	}
+
+	// post the records of the first hours hours
+	public void run(int hours)
+	{
+		long end = hours < this.hours ? hourStart[hours] : records;
+		int segmentRecords = Journal.SEGMENT_RECORDS;
+		long next = 0;
+		try
+		{
+			for (int s = 0; next < end; s++)
+			{
+				MappedByteBuffer segment = map(Journal.segmentPath(dir, s));
+				int n = (int) Math.min(segmentRecords, end - next);
+				for (int r = 0; r < n; r++)
+					record(segment, r * Journal.RECORD);
+				next += n;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't read journal segment", e);
+		}
+		postFrame();
+	}
+
+	void record(MappedByteBuffer b, int at)
+	{
+		long time = b.getLong(at + Journal.TIME);
+		byte type = b.get(at + Journal.TYPE);
+		// records change type at the phase boundaries, wait for the last phase's events to be handled as the simulation did (LANES)
+		if (type != lastType)
+		{
+			postFrame();
+			Simulate.drain();
+			lastType = type;
+		}
+		if (type == Journal.SENSOR)
+		{
+			int location = b.getInt(at + Journal.FROM);
+			Metric metric = Metric.VALUES[b.get(at + Journal.METRIC)];
+			double value = b.getDouble(at + Journal.VALUE);
+			if (sensorFrames)
+			{
+				// readings of a frame are together in the journal, a reading for another location or time starts the next frame
+				if (frame.location != location || frame.time != time)
+				{
+					postFrame();
+					frame.reset(time, location);
+				}
+				frame.set(metric, value);
+			}
+			else
+			{
+				sensor.time = time;
+				sensor.metric = metric;
+				sensor.value = value;
+				sensor.location = location;
+				post(Simulate.topics[location], sensor, 1);
+			}
+			return;
+		}
+
+		postFrame();
+		if (type == Journal.LOAD)
+		{
+			load.time = time;
+			load.goods = b.getInt(at + Journal.GOODS);
+			load.warehouse = b.getInt(at + Journal.FROM);
+			load.truck = b.getInt(at + Journal.TO);
+			Simulate.goodsInWarehouses[load.goods] = -1;
+			Simulate.goodsInTrucks[load.goods] = load.truck;
+			post(Simulate.rfidLoadTopic, load, 1);
+		}
+		else if (type == Journal.UNLOAD)
+		{
+			unload.time = time;
+			unload.goods = b.getInt(at + Journal.GOODS);
+			unload.truck = b.getInt(at + Journal.FROM);
+			unload.warehouse = b.getInt(at + Journal.TO);
+			Simulate.goodsInTrucks[unload.goods] = -1;
+			Simulate.goodsInWarehouses[unload.goods] = unload.warehouse;
+			post(Simulate.rfidUnloadTopic, unload, 1);
+		}
+	}
+
+	void postFrame()
+	{
+		if (frame.readings > 0)
+			post(Simulate.topics[frame.location], frame, frame.readings);
+		frame.reset(0, -1);
+	}
+
+	void post(Topic topic, Object event, int count)
+	{
+		long t0 = System.nanoTime();
+		topic.post(event);
+		latency.record(System.nanoTime() - t0);
+		events += count;
+	}
+
+	// arguments: journal directory, then optional dispatch mode (guava, direct, ring or lanes), hours=n to replay the first n hours, lanes=n,
+	// violations=file (- for System.out), queue=n and block or drop for the violations sink
+	public static void main(String[] args)
+	{
+		if (args.length == 0)
+		{
+			System.out.println("usage: Replay journal-directory [guava|direct|ring|lanes] [hours=n] [lanes=n] [violations=file] [queue=n] [block|drop]");
+			return;
+		}
+		int hours = Integer.MAX_VALUE;
+		for (int i = 1; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (arg.startsWith("hours="))
+				hours = Integer.parseInt(arg.substring("hours=".length()));
+			else if (arg.startsWith("violations="))
+				Simulate.violationsFile = arg.substring("violations=".length());
+			else if (arg.startsWith("queue="))
+				Simulate.violationsQueue = Integer.parseInt(arg.substring("queue=".length()));
+			else if (arg.startsWith("lanes="))
+				Simulate.numLanes = Integer.parseInt(arg.substring("lanes=".length()));
+			else if (arg.equals("block"))
+				Simulate.violationsPolicy = ViolationSink.Policy.BLOCK;
+			else if (arg.equals("drop"))
+				Simulate.violationsPolicy = ViolationSink.Policy.DROP;
+			else
+				Simulate.dispatch = Simulate.Dispatch.valueOf(arg.toUpperCase());
+		}
+
+		Replay replay = new Replay(args[0]);
+		replay.createWorld();
+		Simulate.startViolations();
+
+		System.out.println("****** Kongo V2 replay of " + args[0] + " with " + Simulate.dispatchName() + ", " + Math.min(hours, replay.hours) + " of " + replay.hours + " hours, " + replay.records + " records");
+		long t0 = System.nanoTime();
+		replay.run(hours);
+		Simulate.drain();
+		long t1 = System.nanoTime();
+		Simulate.stopViolations();
+
+		double duration = (t1 - t0) / 1e9;
+		System.out.println("Replay duration (s) = " + duration);
+		System.out.println("Events = " + replay.events + ". Rate (Events/s) = " + replay.events / duration);
+		System.out.println("Post latency: " + replay.latency.toStr(1000, "us"));
+		LatencyHistogram[] handled = Metrics.histograms();
+		if (Simulate.ring != null)
+			for (int i = 0; i < handled.length; i++)
+				handled[i].add(Simulate.ring.handled[i]);
+		if (Simulate.lanes != null)
+			for (RingBuffer lane : Simulate.lanes.lanes)
+				for (int i = 0; i < handled.length; i++)
+					handled[i].add(lane.handled[i]);
+		for (Metrics.Post p : Metrics.Post.VALUES)
+			if (handled[p.ordinal()].count() > 0)
+				System.out.println("Handled " + p + " latency: " + handled[p.ordinal()].toStr(1000, "us"));
+
+		long violations = Simulate.violationSink.published();
+		System.out.println("Violations = " + violations + ", dropped = " + Simulate.violationSink.dropped() + (Simulate.violationsFile.equals("-") ? "" : ", written to " + Simulate.violationsFile));
+		long hash = Simulate.stateHash();
+		System.out.println("World state hash = " + hash);
+		// a full replay should end where the recorded run did
+		if (hours >= replay.hours && replay.meta.getProperty("violations") != null)
+		{
+			long recordedViolations = Long.parseLong(replay.meta.getProperty("violations"));
+			long recordedHash = Long.parseLong(replay.meta.getProperty("stateHash"));
+			System.out.println("Recorded violations = " + recordedViolations + ", state hash = " + recordedHash + (recordedViolations == violations && recordedHash == hash ? ", same" : ", DIFFERENT"));
+		}
+	}
+}
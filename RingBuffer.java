@@ -0,0 +1,293 @@
+package com.instaclustr.kongo2;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Preallocated ring of event slots between the threads generating events and one thread running the handlers (Disruptor style).
+ * Producers claim a sequence number, copy the event into the slot and publish it, the consumer thread takes every published slot
+ * it can see as a batch and posts the events to the target topics, then moves its sequence on so the slots can be reused.
+ * Capacity is bounded: producers wait (with the wait strategy) when the ring is full, which is the backpressure on generation.
+ *
+ * SINGLE producer mode is for one producer thread: claiming is a plain increment and publishing is one ordered write of the cursor.
+ * MULTI producer mode claims with an atomic increment and publishes each slot with a flag (the lap number of its sequence),
+ * so producers don't wait for each other and the consumer sees a slot only when it has been written.
+ * As there is one consumer, handlers run one at a time in publish order, so events for a location are handled in the order they were posted.
+ */
+
+public class RingBuffer
+{
+	enum Producer { SINGLE, MULTI }
+
+	// what a thread does while it waits for the other side, busy spin (lowest latency, burns a core), yield, or park
+	enum Wait
+	{
+		SPIN, YIELD, PARK;
+
+		void idle()
+		{
+			switch (this)
+			{
+				case SPIN: Thread.onSpinWait(); break;
+				case YIELD: Thread.yield(); break;
+				default: LockSupport.parkNanos(1000); break;
+			}
+		}
+	}
+
+	// slot types
+	static final int LOAD = 1;
+	static final int UNLOAD = 2;
+	static final int SENSOR = 3;
+	static final int FRAME = 4;
+
+	// an event copied into the ring. RFID events use goods, from and to, sensor events location, metric and value, frames location and values
+	static final class Slot
+	{
+		Topic target;
+		int type;
+		long time;
+		int goods;
+		int from;
+		int to;
+		int location;
+		Metric metric;
+		double value;
+		final double[] values = new double[Metric.VALUES.length];
+		int readings;
+		long posted;	// System.nanoTime() when posted
+	}
+
+	final Producer producer;
+	final Wait wait;
+	final int capacity;
+	final int mask;
+	final int shift;
+	final Slot[] slots;
+
+	// SINGLE: next sequence to claim, only used by the producer thread, and the highest published sequence
+	long next = 0;
+	final AtomicLong cursor = new AtomicLong(-1);
+	// MULTI: next sequence to claim, and the lap number of the sequence published in each slot
+	final AtomicLong sequence = new AtomicLong(0);
+	final AtomicIntegerArray published;
+
+	// highest sequence the consumer has finished with
+	final AtomicLong consumed = new AtomicLong(-1);
+
+	final Thread consumer;
+	volatile boolean running = true;
+	long batches = 0;
+	long errors = 0;
+
+	// post to handler completion latencies by Metrics.Post, written by the consumer thread, read after drain()
+	final LatencyHistogram[] handled = Metrics.histograms();
+
+	// events the consumer reuses to post the slots, handlers only read an event while it is being posted
+	final RFIDLoadEvent load = new RFIDLoadEvent();
+	final RFIDUnloadEvent unload = new RFIDUnloadEvent();
+	final Sensor sensor = new Sensor(0, Metric.TEMP, 0, -1);
+	final SensorFrame frame = new SensorFrame(0, -1);
+
+	// capacity is rounded up to a power of 2
+	public RingBuffer(int capacity, Producer producer, Wait wait)
+	{
+		this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.mask = this.capacity - 1;
+		this.shift = Integer.numberOfTrailingZeros(this.capacity);
+		this.producer = producer;
+		this.wait = wait;
+		slots = new Slot[this.capacity];
+		for (int i = 0; i < this.capacity; i++)
+			slots[i] = new Slot();
+		published = new AtomicIntegerArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++)
+			published.set(i, -1);
+		consumer = new Thread(this::consume, "ring-consumer");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	public boolean isConsumer()
+	{
+		return Thread.currentThread() == consumer;
+	}
+
+	// claim the next slot, waiting while the ring is full. The slot must be published after it is written
+	long claim()
+	{
+		long seq = producer == Producer.SINGLE ? next++ : sequence.getAndIncrement();
+		while (seq - capacity > consumed.get())
+			wait.idle();
+		return seq;
+	}
+
+	Slot slot(long seq)
+	{
+		return slots[(int) seq & mask];
+	}
+
+	void publish(long seq)
+	{
+		if (producer == Producer.SINGLE)
+			cursor.lazySet(seq);
+		else
+			published.lazySet((int) seq & mask, (int) (seq >>> shift));
+	}
+
+	// copy an event into the ring for the consumer to post to target
+	public void post(Topic target, Object event)
+	{
+		long seq = claim();
+		Slot s = slot(seq);
+		s.target = target;
+		s.posted = System.nanoTime();
+		if (event instanceof SensorFrame)
+		{
+			SensorFrame f = (SensorFrame) event;
+			s.type = FRAME;
+			s.time = f.time;
+			s.location = f.location;
+			System.arraycopy(f.values, 0, s.values, 0, s.values.length);
+			s.readings = f.readings;
+		}
+		else if (event instanceof Sensor)
+		{
+			Sensor e = (Sensor) event;
+			s.type = SENSOR;
+			s.time = e.time;
+			s.location = e.location;
+			s.metric = e.metric;
+			s.value = e.value;
+		}
+		else if (event instanceof RFIDLoadEvent)
+		{
+			RFIDLoadEvent e = (RFIDLoadEvent) event;
+			s.type = LOAD;
+			s.time = e.time;
+			s.goods = e.goods;
+			s.from = e.warehouse;
+			s.to = e.truck;
+		}
+		else if (event instanceof RFIDUnloadEvent)
+		{
+			RFIDUnloadEvent e = (RFIDUnloadEvent) event;
+			s.type = UNLOAD;
+			s.time = e.time;
+			s.goods = e.goods;
+			s.from = e.truck;
+			s.to = e.warehouse;
+		}
+		else
+		{
+			// the slot has been claimed so must be published, the consumer skips it
+			s.type = 0;
+			publish(seq);
+			throw new IllegalArgumentException("can't post " + event.getClass().getSimpleName() + " through the ring");
+		}
+		publish(seq);
+	}
+
+	// highest sequence from seq up which has been published, seq - 1 if none
+	long highestPublished(long seq)
+	{
+		if (producer == Producer.SINGLE)
+			return cursor.get();
+		long claimed = sequence.get();
+		while (seq < claimed && published.get((int) seq & mask) == (int) (seq >>> shift))
+			seq++;
+		return seq - 1;
+	}
+
+	void consume()
+	{
+		long nextSeq = 0;
+		while (running)
+		{
+			long available = highestPublished(nextSeq);
+			if (available < nextSeq)
+			{
+				wait.idle();
+				continue;
+			}
+			for (long seq = nextSeq; seq <= available; seq++)
+			{
+				try
+				{
+					Slot s = slot(seq);
+					dispatch(s);
+					if (s.type != 0)
+						handled[s.type == LOAD ? Metrics.Post.LOAD.ordinal() : s.type == UNLOAD ? Metrics.Post.UNLOAD.ordinal() : Metrics.Post.SENSOR.ordinal()].record(System.nanoTime() - s.posted);
+				}
+				catch (RuntimeException e)
+				{
+					errors++;
+					System.err.println("Ring consumer: " + e);
+				}
+			}
+			batches++;
+			consumed.lazySet(available);
+			nextSeq = available + 1;
+		}
+	}
+
+	void dispatch(Slot s)
+	{
+		switch (s.type)
+		{
+			case LOAD:
+				load.time = s.time;
+				load.goods = s.goods;
+				load.warehouse = s.from;
+				load.truck = s.to;
+				s.target.post(load);
+				break;
+			case UNLOAD:
+				unload.time = s.time;
+				unload.goods = s.goods;
+				unload.truck = s.from;
+				unload.warehouse = s.to;
+				s.target.post(unload);
+				break;
+			case SENSOR:
+				sensor.time = s.time;
+				sensor.location = s.location;
+				sensor.metric = s.metric;
+				sensor.value = s.value;
+				s.target.post(sensor);
+				break;
+			case FRAME:
+				frame.time = s.time;
+				frame.location = s.location;
+				System.arraycopy(s.values, 0, frame.values, 0, s.values.length);
+				frame.readings = s.readings;
+				s.target.post(frame);
+				break;
+			default: break;
+		}
+	}
+
+	// wait until the consumer has handled every event published so far. Call when no producer is posting, e.g. between phases
+	public void drain()
+	{
+		long last = (producer == Producer.SINGLE ? next : sequence.get()) - 1;
+		while (consumed.get() < last)
+			wait.idle();
+	}
+
+	// drain, then stop the consumer thread
+	public void close()
+	{
+		drain();
+		running = false;
+		try
+		{
+			consumer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
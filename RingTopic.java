@@ -0,0 +1,49 @@
+package com.instaclustr.kongo2;
+
+/*
+ * Topic that hands posted events to the shared RingBuffer, the ring consumer thread then posts them to a DirectTopic.
+ * So the partitions only generate events, and the rules are checked on the consumer thread, on another core.
+ * Events posted by the handlers themselves (ColocatedCheckEvent, RuleViolationEvent) are already on the consumer thread so are posted directly,
+ * a handler mustn't wait for room in the ring it is emptying.
+ * Members are changed by the consumer, so the simulation only reads them after Simulate.drain().
+ */
+
+public class RingTopic implements Topic
+{
+	final DirectTopic topic;
+	final RingBuffer ring;
+
+	public RingTopic(String identifier, RingBuffer ring)
+	{
+		this.topic = new DirectTopic(identifier);
+		this.ring = ring;
+	}
+
+	public String identifier()
+	{
+		return topic.identifier();
+	}
+
+	public Members members()
+	{
+		return topic.members();
+	}
+
+	public boolean register(Object subscriber)
+	{
+		return topic.register(subscriber);
+	}
+
+	public boolean unregister(Object subscriber)
+	{
+		return topic.unregister(subscriber);
+	}
+
+	public void post(Object event)
+	{
+		if (ring.isConsumer())
+			topic.post(event);
+		else
+			ring.post(topic, event);
+	}
+}
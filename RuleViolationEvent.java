@@ -0,0 +1,60 @@
+package com.instaclustr.kongo2;
+
+/*
+ * A rule violation by a Goods, published on the Simulate.violationTopic rather than printed where it is found.
+ * Compact representation: the goods and location are ids (Goods.id, Locations), and the violated rules are a mask of Rules category bits.
+ * For SENSOR the categories whose sensor rules are violated, for COLOCATED the categories of the other goods which conflict with the goods.
+ * The text is only built by toStr, on the ViolationSink thread.
+ */
+
+public class RuleViolationEvent
+{
+	enum Type { SENSOR, COLOCATED, LOAD, UNLOAD }
+
+	final Type type;
+	final long time;
+	final int goods;
+	final int location;
+	final int violated;
+	final int other;	// COLOCATED: the goods being loaded, else -1
+
+	public RuleViolationEvent(Type type, long time, int goods, int location, int violated, int other)
+	{
+		this.type = type;
+		this.time = time;
+		this.goods = goods;
+		this.location = location;
+		this.violated = violated;
+		this.other = other;
+	}
+
+	// sensor rules violated by goods at location
+	static RuleViolationEvent sensor(long time, int goods, int location, int violated)
+	{
+		return new RuleViolationEvent(Type.SENSOR, time, goods, location, violated, -1);
+	}
+
+	// goods already on board the truck at location conflicts with the goods being loaded
+	static RuleViolationEvent colocated(long time, int goods, int location, int violated, int loading)
+	{
+		return new RuleViolationEvent(Type.COLOCATED, time, goods, location, violated, loading);
+	}
+
+	// goods was not at the location it was loaded or unloaded from
+	static RuleViolationEvent move(Type type, long time, int goods, int location)
+	{
+		return new RuleViolationEvent(type, time, goods, location, 0, -1);
+	}
+
+	public String toStr()
+	{
+		Goods g = Simulate.goodsStore.get(goods);
+		switch (type)
+		{
+			case SENSOR: return "SENSOR RULE VIOLATION for goods=" + g.tag() + ", categories=" + g.allCategories() + " in warehouse " + Locations.key(location) + " violations: " + Rules.violationString(violated);
+			case COLOCATED: return "Object already loaded on Truck " + g.tag() + " is NOT HAPPY with Goods being loaded= " + Simulate.goodsStore.get(other).tag();
+			case LOAD: return "LOAD EVENT Violation: Goods= " + g.tag() + " could not be loaded from warehouse location " + Locations.key(location);
+			default: return "UNLOAD EVENT Violation: Goods= " + g.tag() + " could not be unloaded from truck location " + Locations.key(location);
+		}
+	}
+}
@@ -1,40 +1,227 @@
 /*
- * Returns String of categories not allowed in truck with the Goods.
+ * Goods categories as bits of a single int mask, and the constant tables used to check which categories are not allowed together in a truck.
+ * Goods.categoryMask() and Trucks.categoriesOnBoard() both use these bits, so a co-location check is one table lookup and one AND.
  */
 
 package com.instaclustr.kongo2;
 
 public class Rules {
-	
-	public static String goodsNotAllowedInTruck(String Me)
+
+	// one bit per category
+	static final int PERISHABLE			= 1 << 0;	// P
+	static final int HAZARDOUS			= 1 << 1;	// H
+	static final int FRAGILE				= 1 << 2;	// F
+	static final int EDIBLE				= 1 << 3;	// E
+	static final int MEDICINAL			= 1 << 4;	// M
+	static final int BULKY				= 1 << 5;	// B
+	static final int DRY					= 1 << 6;	// D
+	// Environmental/temperature category, only 1 allowed, bit for temp sub category n is TEMP_FROZEN << n
+	static final int TEMP_FROZEN			= 1 << 7;	// T1
+	static final int TEMP_HEAT_SENSITIVE	= 1 << 8;	// T2
+	static final int TEMP_COOL			= 1 << 9;	// T3
+	static final int TEMP_ROOM			= 1 << 10;	// T4
+	static final int TEMP_AMBIENT		= 1 << 11;	// T5
+
+	static final int TEMP_SHIFT = 7;
+	static final int ANY_TEMP = TEMP_FROZEN | TEMP_HEAT_SENSITIVE | TEMP_COOL | TEMP_ROOM | TEMP_AMBIENT;
+	static final int NUM_MASKS = 1 << 12;
+
+	// categories a truck keeps track of when loading. Note that we don't have dry and temp cats here as not used to check if loading is ok
+	static final int TRUCK_CATEGORIES = PERISHABLE | HAZARDOUS | FRAGILE | EDIBLE | MEDICINAL | BULKY;
+
+	// for each temp sub category (0-4), the location temperature ranges it is allowed in, as bits 1 << tempRange.
+	// if needs to be frozen location must be frozen etc, for ambient temp any temp range except freezing is ok
+	static final int[] TEMP_RANGES_ALLOWED = { 1 << 0, 1 << 1, 1 << 2, 1 << 3, (1 << 1) | (1 << 2) | (1 << 3) | (1 << 4) };
+
+	// sensor rules, as the categories whose rules are violated by a reading. Violations are reported as masks of category bits,
+	// with any temp category bit for a temperature out of the goods temp range
+	static final int WET_RULES = MEDICINAL | PERISHABLE | EDIBLE | DRY;	// humidity > 60, must be kept dry
+	static final int LIGHT_RULES = MEDICINAL | PERISHABLE;			// illuminance > 500, must be kept dark
+
+	// the categories with sensor rules. Goods with the same sensor rule categories (their signature) always violate the same rules
+	// for a reading, apart from the use by date of perishable goods
+	static final int SENSOR_RULE_CATEGORIES = FRAGILE | MEDICINAL | PERISHABLE | EDIBLE | DRY | ANY_TEMP;
+	// dense signature numbers: 5 boolean categories with sensor rules and 6 temp options (none or 1 of 5)
+	static final int NUM_SIGNATURES = 32 * 6;
+
+	// category letters in the same order as the bits, used for the String representation of a mask
+	static final String[] NAMES = { "P", "H", "F", "E", "M", "B", "D", "T1", "T2", "T3", "T4", "T5" };
+
+	// for each single category, the categories which are not allowed in the same truck
+	static final int[] CONFLICTS = new int[NAMES.length];
+
+	// for every mask, OR of CONFLICTS of all of its categories, i.e. the categories forbidden in a truck with those categories
+	static final int[] NOT_ALLOWED_IN_TRUCK = new int[NUM_MASKS];
+
+	// String representation of every mask, built once so allCategories() doesn't allocate
+	static final String[] CATEGORY_STRINGS = new String[NUM_MASKS];
+
+	// String of violated rules for every violation mask
+	static final String[] VIOLATION_STRINGS = new String[NUM_MASKS];
+
+	// signature number for every mask
+	static final short[] SIGNATURES = new short[NUM_MASKS];
+
+	static
 	{
-		String s = "";
 		// Fragile and Bulky
-		if (Me.contains("F"))
-			s += "B";
-		if (Me.contains("B"))
-			s += "F";
-		 
+		conflict(FRAGILE, BULKY);
 		// Hazardous and (edible or medicinal)
-		if (Me.contains("H"))
-			s += "EM";
-		if (Me.contains("E"))
-			s += "H";
-		if (Me.contains("M"))
-			s += "H";
-		
-		if (Me.contains("E"))
-			s += "M";
-		if (Me.contains("M"))
-			s += "E";
-		
-		return s;
-	}
-	
+		conflict(HAZARDOUS, EDIBLE);
+		conflict(HAZARDOUS, MEDICINAL);
+		// edible and medicinal
+		conflict(EDIBLE, MEDICINAL);
+		// no hazardous goods are allowed together
+		conflict(HAZARDOUS, HAZARDOUS);
+
+		for (int mask = 0; mask < NUM_MASKS; mask++)
+		{
+			int forbidden = 0;
+			String s = "";
+			for (int i = 0; i < NAMES.length; i++)
+				if ((mask & (1 << i)) != 0)
+				{
+					forbidden |= CONFLICTS[i];
+					s += NAMES[i];
+				}
+			NOT_ALLOWED_IN_TRUCK[mask] = forbidden;
+			CATEGORY_STRINGS[mask] = s;
+
+			String v = "";
+			if ((mask & FRAGILE) != 0) v += "fragile ";
+			if ((mask & MEDICINAL) != 0) v += "medicinal ";
+			if ((mask & PERISHABLE) != 0) v += "perishable ";
+			if ((mask & EDIBLE) != 0) v += "edible ";
+			if ((mask & DRY) != 0) v += "dry ";
+			if ((mask & ANY_TEMP) != 0) v += "temp";
+			VIOLATION_STRINGS[mask] = v;
+
+			int bits = ((mask & FRAGILE) != 0 ? 1 : 0) | ((mask & MEDICINAL) != 0 ? 2 : 0) | ((mask & PERISHABLE) != 0 ? 4 : 0)
+					| ((mask & EDIBLE) != 0 ? 8 : 0) | ((mask & DRY) != 0 ? 16 : 0);
+			SIGNATURES[mask] = (short) (bits * 6 + tempSubCat(mask) + 1);
+		}
+	}
+
+	// conflicts are symmetric
+	private static void conflict(int a, int b)
+	{
+		CONFLICTS[Integer.numberOfTrailingZeros(a)] |= b;
+		CONFLICTS[Integer.numberOfTrailingZeros(b)] |= a;
+	}
+
+	// true if goods with categories a are allowed in the same truck as goods with categories b
+	static boolean allowedInTruck(int a, int b)
+	{
+		return (NOT_ALLOWED_IN_TRUCK[a] & b) == 0;
+	}
+
+	// mask with only the temp category bit for a Temp sub category number (0-4), or 0 for none
+	static int tempCategory(int subCatNum)
+	{
+		return subCatNum < 0 ? 0 : TEMP_FROZEN << subCatNum;
+	}
+
+	// Temp sub category number (0-4) of a mask, or -1 if the mask has no temp category
+	static int tempSubCat(int mask)
+	{
+		int t = mask & ANY_TEMP;
+		return t == 0 ? -1 : Integer.numberOfTrailingZeros(t) - TEMP_SHIFT;
+	}
+
+	// check if goods with categories mask are allowed in a truck or warehouse given temp rules and its temperature range
+	static boolean tempAllowed(int mask, boolean tempControlled, int tempRange)
+	{
+		int t = tempSubCat(mask);
+		// goods without a temp cat are allowed anywhere
+		if (t < 0)
+			return true;
+		return tempControlled && (TEMP_RANGES_ALLOWED[t] & (1 << tempRange)) != 0;
+	}
+
+	static String categoryString(int mask)
+	{
+		return CATEGORY_STRINGS[mask];
+	}
+
+	// signature number (0 to NUM_SIGNATURES-1) of goods with categories mask
+	static int signature(int mask)
+	{
+		return SIGNATURES[mask];
+	}
+
+	// the sensor rules violated by a reading for goods with categories mask, as a mask of the categories whose rules are violated.
+	// One switch on the metric instead of comparing the metric in every rule. Doesn't include use by dates, see Goods.sensorViolations
+	static int sensorViolations(int mask, Sensor sensor)
+	{
+		int violated = 0;
+		double value = sensor.value;
+		switch (sensor.metric)
+		{
+			case HUMIDITY:					if (value > 60) violated = WET_RULES; break;
+			case ILLUMINANCE:				if (value > 500) violated = LIGHT_RULES; break;
+			case ACCELERATION:				if (value >= 5) violated = FRAGILE; break;
+			case VIBRATION_DISPLACEMENT:	if (value >= 10) violated = FRAGILE; break;
+			case VIBRATION_VELOCITY:		if (value >= 100) violated = FRAGILE; break;
+			case TEMP:						if ((mask & ANY_TEMP) != 0 && !Temp.of(tempSubCat(mask)).tempInRange(value)) violated = ANY_TEMP; break;
+			default: break;
+		}
+		return violated & mask;
+	}
+
+	// frame version of sensorViolations, checks all the rules against all the readings in one pass.
+	// Missing readings are NaN so the comparisons for them are false, i.e. not a violation.
+	static int sensorFrameViolations(int mask, SensorFrame frame)
+	{
+		int violated = 0;
+		if (frame.get(Metric.HUMIDITY) > 60)
+			violated |= WET_RULES;
+		if (frame.get(Metric.ILLUMINANCE) > 500)
+			violated |= LIGHT_RULES;
+		if (frame.get(Metric.ACCELERATION) >= 5 || frame.get(Metric.VIBRATION_DISPLACEMENT) >= 10 || frame.get(Metric.VIBRATION_VELOCITY) >= 100)
+			violated |= FRAGILE;
+		if ((mask & ANY_TEMP) != 0 && frame.has(Metric.TEMP) && !Temp.of(tempSubCat(mask)).tempInRange(frame.get(Metric.TEMP)))
+			violated |= ANY_TEMP;
+		return violated & mask;
+	}
+
+	// String of violated rules, "" for no violations
+	static String violationString(int violated)
+	{
+		return VIOLATION_STRINGS[violated];
+	}
+
+	// parse a String of categories (e.g. "PHE") into a mask
+	static int categoryMask(String s)
+	{
+		int mask = 0;
+		for (int i = NAMES.length - 1; i >= 0; i--)
+		{
+			int at = s.indexOf(NAMES[i]);
+			if (at >= 0)
+			{
+				mask |= 1 << i;
+				s = s.substring(0, at) + s.substring(at + NAMES[i].length());
+			}
+		}
+		return mask;
+	}
+
+	// Returns mask of categories not allowed in truck with goods with the given categories.
+	public static int goodsNotAllowedInTruck(int me)
+	{
+		return NOT_ALLOWED_IN_TRUCK[me];
+	}
+
+	// Returns String of categories not allowed in truck with the Goods.
+	public static String goodsNotAllowedInTruck(String Me)
+	{
+		return categoryString(goodsNotAllowedInTruck(categoryMask(Me)));
+	}
+
 	public static String goodsNotAllowedInWarehouse(String Me)
 	{
 		return "";  // everything allowed in warehouses
 	}
-	
+
 
 }
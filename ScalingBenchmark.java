@@ -0,0 +1,412 @@
+package com.instaclustr.kongo2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Runs the simulation loop for every combination of the swept parameters and writes a report, to see how each configuration scales.
+ * Parameters are lists, e.g. goods=1000,10000,100000 dispatch=direct,ring, and every combination is a configuration.
+ * Each configuration has warmup runs, then measured runs, each in a new world (Simulate.reset), in this JVM or with fork in a new JVM per configuration.
+ * With snapshots=dir each world size is created once and saved as a Snapshot in dir, and restored from it after that.
+ * A run is silent, its violations go nowhere, and it reports events/s, the peak heap used, and GC count and time.
+ * The report is name.csv and name.json with a row per configuration: mean, min and max events/s over the runs, and the exponent of run time
+ * against goods from the configuration with the next smaller goods count and the same other parameters (1 is linear, much more is a super-linear regression).
+ */
+
+public class ScalingBenchmark
+{
+	// a configuration, in report column order
+	static final String[] PARAMS = {"goods", "warehouses", "trucks", "hours", "dispatch", "parallel", "enforceTempRules", "enforceHazardousRules", "checkGoods", "routing", "scheduled"};
+
+	static final String RESULT = "RESULT ";
+
+	// a configuration and its results
+	static class Config
+	{
+		final String[] values;
+
+		double meanEventsPerSec, minEventsPerSec, maxEventsPerSec;
+		double meanSeconds;
+		double heapPeakMB;
+		double gcCount, gcMillis;
+		long events;
+		double exponent = Double.NaN;
+
+		Config(String[] values)
+		{
+			this.values = values;
+		}
+
+		String get(String param)
+		{
+			return values[Arrays.asList(PARAMS).indexOf(param)];
+		}
+
+		int getInt(String param)
+		{
+			return Integer.parseInt(get(param));
+		}
+
+		boolean getBoolean(String param)
+		{
+			return Boolean.parseBoolean(get(param));
+		}
+
+		// the configuration as arguments for a forked JVM
+		List<String> args()
+		{
+			List<String> args = new ArrayList<String>();
+			for (int i = 0; i < PARAMS.length; i++)
+				args.add(PARAMS[i] + "=" + values[i]);
+			return args;
+		}
+
+		// same configuration apart from goods
+		boolean sameExceptGoods(Config c)
+		{
+			for (int i = 1; i < PARAMS.length; i++)
+				if (!values[i].equals(c.values[i]))
+					return false;
+			return true;
+		}
+
+		String results()
+		{
+			return String.format(Locale.ROOT, "%d,%.1f,%.1f,%.1f,%.4f,%.1f,%.1f,%.1f", events, meanEventsPerSec, minEventsPerSec, maxEventsPerSec, meanSeconds, heapPeakMB, gcCount, gcMillis);
+		}
+
+		void parseResults(String line)
+		{
+			String[] r = line.split(",");
+			events = Long.parseLong(r[0]);
+			meanEventsPerSec = Double.parseDouble(r[1]);
+			minEventsPerSec = Double.parseDouble(r[2]);
+			maxEventsPerSec = Double.parseDouble(r[3]);
+			meanSeconds = Double.parseDouble(r[4]);
+			heapPeakMB = Double.parseDouble(r[5]);
+			gcCount = Double.parseDouble(r[6]);
+			gcMillis = Double.parseDouble(r[7]);
+		}
+	}
+
+	// swept values of each parameter, in PARAMS order
+	final String[][] sweep = {{"1000", "10000"}, {"100"}, {"200"}, {"10"}, {"direct"}, {"false"}, {"false"}, {"false"}, {"true"}, {"false"}, {"false"}};
+	int warmup = 1;
+	int runs = 3;
+	long seed = 42;
+	boolean fork = false;
+	String report = "scaling";
+	String snapshots = null;
+
+	// every combination of the swept values, goods varying fastest
+	List<Config> configs()
+	{
+		List<Config> configs = new ArrayList<Config>();
+		int[] at = new int[PARAMS.length];
+		while (true)
+		{
+			String[] values = new String[PARAMS.length];
+			for (int i = 0; i < PARAMS.length; i++)
+				values[i] = sweep[i][at[i]];
+			configs.add(new Config(values));
+			int i = 0;
+			while (i < PARAMS.length && ++at[i] == sweep[i].length)
+				at[i++] = 0;
+			if (i == PARAMS.length)
+				return configs;
+		}
+	}
+
+	// run the warmup and measured runs of a configuration in this JVM
+	void run(Config c)
+	{
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try
+		{
+			double sumRate = 0, sumSeconds = 0, sumGcCount = 0, sumGcMillis = 0;
+			c.minEventsPerSec = Double.MAX_VALUE;
+			c.maxEventsPerSec = 0;
+			c.heapPeakMB = 0;
+			for (int r = 0; r < warmup + runs; r++)
+			{
+				createWorld(c);
+				System.gc();
+				resetPeakHeap();
+				long gcCount0 = gcCount(), gcMillis0 = gcMillis();
+				long t0 = System.nanoTime();
+				long events = Simulate.loop(c.getInt("hours"));
+				double seconds = (System.nanoTime() - t0) / 1e9;
+				if (r < warmup)
+					continue;
+				double rate = events / seconds;
+				c.events = events;
+				sumRate += rate;
+				sumSeconds += seconds;
+				c.minEventsPerSec = Math.min(c.minEventsPerSec, rate);
+				c.maxEventsPerSec = Math.max(c.maxEventsPerSec, rate);
+				c.heapPeakMB = Math.max(c.heapPeakMB, peakHeap() / (1024.0 * 1024.0));
+				sumGcCount += gcCount() - gcCount0;
+				sumGcMillis += gcMillis() - gcMillis0;
+			}
+			c.meanEventsPerSec = sumRate / runs;
+			c.meanSeconds = sumSeconds / runs;
+			c.gcCount = sumGcCount / runs;
+			c.gcMillis = sumGcMillis / runs;
+		}
+		finally
+		{
+			Simulate.reset();
+			System.setOut(out);
+		}
+	}
+
+	void createWorld(Config c)
+	{
+		Simulate.reset();
+		Simulate.setSeed(seed);
+		Simulate.verbose = false;
+		Simulate.violationsFile = "-";
+		Simulate.metricsFile = null;
+		Simulate.dispatch = Simulate.Dispatch.valueOf(c.get("dispatch").toUpperCase());
+		Simulate.parallel = c.getBoolean("parallel");
+		Simulate.enforceTempRules = c.getBoolean("enforceTempRules");
+		Simulate.enforceHazardousRules = c.getBoolean("enforceHazardousRules");
+		Simulate.checkGoods = c.getBoolean("checkGoods");
+		Simulate.routing = c.getBoolean("routing");
+		Simulate.scheduled = c.getBoolean("scheduled");
+		int warehouses = c.getInt("warehouses");
+		int side = (int) Math.sqrt(warehouses);
+		if (snapshots == null)
+		{
+			Simulate.createWorld(c.getInt("goods"), side, side, c.getInt("trucks"));
+			return;
+		}
+		String snapshot = Paths.get(snapshots, "world-" + c.get("goods") + "-" + warehouses + "-" + c.get("trucks") + "-" + seed + ".snapshot").toString();
+		if (Files.exists(Paths.get(snapshot)))
+			Snapshot.restore(snapshot);
+		else
+		{
+			Simulate.createWorld(c.getInt("goods"), side, side, c.getInt("trucks"));
+			try
+			{
+				Files.createDirectories(Paths.get(snapshots));
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException("can't create snapshots directory " + snapshots, e);
+			}
+			Snapshot.save(snapshot);
+		}
+	}
+
+	// run a configuration in a new JVM, which prints its results on a RESULT line
+	void fork(Config c)
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ScalingBenchmark.class.getName());
+		command.add("child");
+		command.addAll(c.args());
+		command.add("warmup=" + warmup);
+		command.add("runs=" + runs);
+		command.add("seed=" + seed);
+		if (snapshots != null)
+			command.add("snapshots=" + snapshots);
+		try
+		{
+			Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+			String result = null;
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream())))
+			{
+				for (String line = in.readLine(); line != null; line = in.readLine())
+					if (line.startsWith(RESULT))
+						result = line.substring(RESULT.length());
+					else
+						System.out.println("  " + line);
+			}
+			if (p.waitFor() != 0 || result == null)
+				throw new IllegalStateException("forked run of " + c.args() + " failed");
+			c.parseResults(result);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't fork run of " + c.args(), e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		}
+	}
+
+	static void resetPeakHeap()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	// sum of the heap pool peaks, an upper bound as pools peak at different times
+	static long peakHeap()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	static long gcCount()
+	{
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+
+	static long gcMillis()
+	{
+		long ms = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			ms += Math.max(0, gc.getCollectionTime());
+		return ms;
+	}
+
+	// exponent of run time against goods, from the configuration with the next smaller goods count
+	static void exponents(List<Config> configs)
+	{
+		for (Config c : configs)
+		{
+			Config smaller = null;
+			for (Config d : configs)
+				if (d.sameExceptGoods(c) && d.getInt("goods") < c.getInt("goods") && (smaller == null || d.getInt("goods") > smaller.getInt("goods")))
+					smaller = d;
+			if (smaller != null)
+				c.exponent = Math.log(c.meanSeconds / smaller.meanSeconds) / Math.log((double) c.getInt("goods") / smaller.getInt("goods"));
+		}
+	}
+
+	void write(List<Config> configs)
+	{
+		String header = String.join(",", PARAMS) + ",events,eventsPerSec,minEventsPerSec,maxEventsPerSec,seconds,heapPeakMB,gcCount,gcMillis,goodsExponent";
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(report + ".csv"))))
+		{
+			out.println(header);
+			for (Config c : configs)
+				out.println(String.join(",", c.values) + "," + c.results() + "," + (Double.isNaN(c.exponent) ? "" : String.format(Locale.ROOT, "%.3f", c.exponent)));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write report " + report + ".csv", e);
+		}
+
+		String[] columns = header.split(",");
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(report + ".json"))))
+		{
+			out.println("[");
+			for (int i = 0; i < configs.size(); i++)
+			{
+				Config c = configs.get(i);
+				String[] row = (String.join(",", c.values) + "," + c.results() + "," + (Double.isNaN(c.exponent) ? "null" : String.format(Locale.ROOT, "%.3f", c.exponent))).split(",");
+				StringBuilder s = new StringBuilder("  {");
+				for (int j = 0; j < columns.length; j++)
+				{
+					boolean string = j < PARAMS.length && PARAMS[j].equals("dispatch");
+					s.append(j == 0 ? "" : ", ").append("\"").append(columns[j]).append("\": ").append(string ? "\"" + row[j] + "\"" : row[j]);
+				}
+				out.println(s.append(i < configs.size() - 1 ? "}," : "}"));
+			}
+			out.println("]");
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write report " + report + ".json", e);
+		}
+	}
+
+	// arguments: param=v1,v2,... for any of PARAMS, warmup=n, runs=n, seed=n, fork, report=name (default scaling, writes scaling.csv and scaling.json), snapshots=dir
+	public static void main(String[] args)
+	{
+		ScalingBenchmark b = new ScalingBenchmark();
+		boolean child = false;
+		for (String arg : args)
+		{
+			int eq = arg.indexOf('=');
+			String key = eq < 0 ? arg : arg.substring(0, eq);
+			String value = eq < 0 ? "" : arg.substring(eq + 1);
+			int param = Arrays.asList(PARAMS).indexOf(key);
+			if (param >= 0)
+				b.sweep[param] = value.split(",");
+			else if (key.equals("warmup"))
+				b.warmup = Integer.parseInt(value);
+			else if (key.equals("runs"))
+				b.runs = Math.max(1, Integer.parseInt(value));
+			else if (key.equals("seed"))
+				b.seed = Long.parseLong(value);
+			else if (key.equals("report"))
+				b.report = value;
+			else if (key.equals("snapshots"))
+				b.snapshots = value;
+			else if (key.equals("fork"))
+				b.fork = true;
+			else if (key.equals("child"))
+				child = true;
+			else
+				throw new IllegalArgumentException("unknown argument " + arg);
+		}
+
+		// the warehouses are a square grid, so the report has the number of warehouses the runs had
+		for (String w : b.sweep[Arrays.asList(PARAMS).indexOf("warehouses")])
+		{
+			int n = Integer.parseInt(w);
+			int side = (int) Math.sqrt(n);
+			if (n < 1 || side * side != n)
+				throw new IllegalArgumentException("warehouses=" + w + " is not a square number, the warehouses are a square grid");
+		}
+
+		List<Config> configs = b.configs();
+		// forked JVM, one configuration
+		if (child)
+		{
+			Config c = configs.get(0);
+			b.run(c);
+			System.out.println(RESULT + c.results());
+			return;
+		}
+
+		System.out.println("****** Kongo V2 scaling benchmark, " + configs.size() + " configurations, " + b.warmup + " warmup and " + b.runs + " measured runs each" + (b.fork ? ", a JVM per configuration" : ""));
+		for (Config c : configs)
+		{
+			System.out.println(String.join(" ", c.args()));
+			if (b.fork)
+				b.fork(c);
+			else
+				b.run(c);
+			System.out.println(String.format(Locale.ROOT, "  events/s = %.1f (min %.1f, max %.1f), heap peak = %.1f MB, GC = %.1f in %.1f ms", c.meanEventsPerSec, c.minEventsPerSec, c.maxEventsPerSec, c.heapPeakMB, c.gcCount, c.gcMillis));
+		}
+		exponents(configs);
+		for (Config c : configs)
+			if (!Double.isNaN(c.exponent))
+				System.out.println(String.format(Locale.ROOT, "%s: run time grows as goods^%.2f", String.join(" ", c.args()), c.exponent) + (c.exponent > 1.2 ? ", SUPER-LINEAR" : ""));
+		b.write(configs);
+		System.out.println("Report written to " + b.report + ".csv and " + b.report + ".json");
+	}
+}
@@ -0,0 +1,267 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+
+/*
+ * Discrete event engine for Simulate.scheduled, instead of the hourly turns where every warehouse and truck does something every hour.
+ * A time ordered queue holds the next action of each truck and sensor: a truck ARRIVEs at a warehouse, unloads and loads,
+ * DEPARTs after Simulate.dwell minutes, and arrives at its next warehouse after the travel time. Each warehouse and truck SENSOR
+ * reports every so many minutes, its own period around Simulate.sensorPeriod. Only the actions that are due do any work,
+ * so docked, travelling and idle trucks and warehouses cost nothing between their actions.
+ * Time is in minutes from the start. Events are stamped with the hour, as in the hourly loop, so use by dates (in hours) expire
+ * at the same time in both and their violations can be compared. Actions due at the same time run in the order they were scheduled.
+ * The actions use the Partition of the warehouse involved (of the truck's warehouse for truck sensors) to make events,
+ * and run on one thread. RING and LANES dispatch are drained before goods are read, as at the phase barriers of the hourly loop,
+ * and LANES before a truck sensor reading, which is handled on the truck's lane rather than its warehouse's.
+ */
+
+public class Scheduler
+{
+	static final int MINUTES = 60;	// per hour
+
+	// actions
+	static final int ARRIVE = 0;
+	static final int DEPART = 1;
+	static final int SENSOR = 2;
+
+	// binary heap of actions ordered by time then sequence number, with the action and its target
+	// (index of the truck in Simulate.allTrucks, or the sensor location id)
+	long[] times = new long[64];
+	long[] seqs = new long[64];
+	int[] actions = new int[64];
+	int[] targets = new int[64];
+	int size = 0;
+	long seq = 0;
+
+	// the action taken off the queue by next()
+	long time;
+	int action;
+	int target;
+
+	// by location id: the partition of a warehouse, the truck at a truck location, and the sensor period in minutes
+	final Partition[] partitions;
+	final Trucks[] trucks;
+	final int[] periods;
+
+	public Scheduler()
+	{
+		int n = Locations.size();
+		partitions = new Partition[n];
+		trucks = new Trucks[n];
+		periods = new int[n];
+		for (Partition p : Simulate.partitions)
+			partitions[p.warehouse.locationId] = p;
+
+		// trucks arrive at the warehouse they start at during the first hour, and sensors start at a random time in their period
+		for (int i = 0; i < Simulate.allTrucks.size(); i++)
+		{
+			Trucks t = Simulate.allTrucks.get(i);
+			trucks[t.locationId] = t;
+			schedule(Simulate.rand.nextInt(MINUTES), ARRIVE, i);
+		}
+		for (int location = 0; location < n; location++)
+			if (partitions[location] != null || trucks[location] != null)
+			{
+				periods[location] = Math.max(1, Simulate.sensorPeriod / 2 + Simulate.rand.nextInt(Math.max(1, Simulate.sensorPeriod)));
+				schedule(Simulate.rand.nextInt(periods[location]), SENSOR, location);
+			}
+	}
+
+	public void schedule(long time, int action, int target)
+	{
+		if (size == times.length)
+		{
+			times = Arrays.copyOf(times, size * 2);
+			seqs = Arrays.copyOf(seqs, size * 2);
+			actions = Arrays.copyOf(actions, size * 2);
+			targets = Arrays.copyOf(targets, size * 2);
+		}
+		// sift up from the end
+		int i = size++;
+		long s = seq++;
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (!before(time, s, times[parent], seqs[parent]))
+				break;
+			move(parent, i);
+			i = parent;
+		}
+		set(i, time, s, action, target);
+	}
+
+	// time of the next action, Long.MAX_VALUE if there are none
+	public long peek()
+	{
+		return size == 0 ? Long.MAX_VALUE : times[0];
+	}
+
+	// take the next action off the queue into time, action and target. false if there are none
+	public boolean next()
+	{
+		if (size == 0)
+			return false;
+		time = times[0];
+		action = actions[0];
+		target = targets[0];
+
+		// sift the last one down from the top
+		int last = --size;
+		long t = times[last], s = seqs[last];
+		int a = actions[last], g = targets[last];
+		int i = 0;
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(times[child + 1], seqs[child + 1], times[child], seqs[child]))
+				child++;
+			if (!before(times[child], seqs[child], t, s))
+				break;
+			move(child, i);
+			i = child;
+		}
+		if (size > 0)
+			set(i, t, s, a, g);
+		return true;
+	}
+
+	// the hour of the action taken off the queue, the time the events it makes are stamped with
+	long hour()
+	{
+		return time / MINUTES;
+	}
+
+	static boolean before(long t0, long s0, long t1, long s1)
+	{
+		return t0 < t1 || t0 == t1 && s0 < s1;
+	}
+
+	void move(int from, int to)
+	{
+		set(to, times[from], seqs[from], actions[from], targets[from]);
+	}
+
+	void set(int i, long t, long s, int a, int g)
+	{
+		times[i] = t;
+		seqs[i] = s;
+		actions[i] = a;
+		targets[i] = g;
+	}
+
+	// run the actions due in the first hours hours, returns the number of events
+	public long run(int hours)
+	{
+		long end = (long) hours * MINUTES;
+		long events = 0;
+		long hour = 0;
+		if (Simulate.journal != null) Simulate.journal.hour(0);
+		while (peek() < end && next())
+		{
+			// hours with nothing due still end
+			while (time >= (hour + 1) * MINUTES)
+			{
+				events += endHour(hour++);
+				if (Simulate.journal != null) Simulate.journal.hour(hour);
+			}
+			switch (action)
+			{
+				case ARRIVE: arrive(Simulate.allTrucks.get(target), target); break;
+				case DEPART: depart(Simulate.allTrucks.get(target), target); break;
+				case SENSOR: sensor(target); break;
+			}
+		}
+		while (hour < hours)
+		{
+			events += endHour(hour++);
+			if (Simulate.journal != null && hour < hours) Simulate.journal.hour(hour);
+		}
+		return events;
+	}
+
+	long endHour(long hour)
+	{
+		System.out.println("************** Time = " + hour + ", " + size + " actions queued");
+		long events = Simulate.collectPartitions();
+		Simulate.endHour(hour);
+		return events;
+	}
+
+	// truck gets to its warehouse, unloads and loads, then departs after the dwell time
+	void arrive(Trucks truck, int index)
+	{
+		Warehouses w = truck.warehouse;
+		Partition p = partitions[w.locationId];
+		Simulate.dockTruck(truck, w);
+		if (Simulate.verbose) System.out.println(time + " Truck " + truck.id + " arrived at " + w.id);
+
+		long t0 = System.nanoTime();
+		Simulate.drain();
+		p.unload(truck, hour());
+		long t1 = System.nanoTime();
+		// the goods unloaded are in the warehouse, and can be loaded again
+		Simulate.drain();
+		p.load(truck, hour());
+		long t2 = System.nanoTime();
+		Simulate.metrics.phase(Metrics.Phase.UNLOAD, t1 - t0);
+		Simulate.metrics.phase(Metrics.Phase.LOAD, t2 - t1);
+
+		schedule(time + Simulate.dwell, DEPART, index);
+	}
+
+	// truck leaves for another warehouse, or if there is nowhere to go tries again an hour later
+	void depart(Trucks truck, int index)
+	{
+		long t0 = System.nanoTime();
+		Warehouses from = truck.warehouse;
+		Warehouses to;
+		long minutes;
+		if (Simulate.routing)
+		{
+			to = Simulate.route(truck, from);
+			minutes = to == null ? 0 : Math.max(1, (long) Math.ceil(MINUTES * WarehouseGrid.distance(from, to) / Simulate.truckSpeed));
+		}
+		else
+		{
+			to = Simulate.enforceTempRules ? Simulate.warehouseIndex.randomForTruck(truck, Simulate.rand) : Simulate.allWarehouses.get(Simulate.rand.nextInt(Simulate.allWarehouses.size()));
+			minutes = Simulate.travel;
+		}
+
+		if (to == null)
+			schedule(time + MINUTES, DEPART, index);
+		else
+		{
+			Simulate.departTruck(truck, to, time + minutes);
+			schedule(time + minutes, ARRIVE, index);
+			if (Simulate.verbose) System.out.println(time + " Truck " + truck.id + " temp cat=" + truck.tempRange + " leaving " + from.id + " for " + to.id + " with temp cat=" + to.tempRange + ", " + minutes + " minutes away");
+		}
+		Simulate.metrics.phase(Metrics.Phase.MOVE, System.nanoTime() - t0);
+	}
+
+	// sensor readings for a warehouse or truck, and the next ones a period later
+	void sensor(int location)
+	{
+		long t0 = System.nanoTime();
+		Trucks truck = trucks[location];
+		if (truck != null)
+		{
+			// the truck's frame goes to its own lane, so the loads and unloads of the truck on its warehouse's lane are handled first
+			if (Simulate.lanes != null)
+				Simulate.drain();
+			partitions[truck.warehouse.locationId].truckSensors(truck, hour());
+			long nanos = System.nanoTime() - t0;
+			Simulate.metrics.phase(Metrics.Phase.SENSOR, nanos);
+			Simulate.metrics.phase(Metrics.Phase.TRUCK_SENSORS, nanos);
+		}
+		else
+		{
+			partitions[location].warehouseSensors(hour());
+			long nanos = System.nanoTime() - t0;
+			Simulate.metrics.phase(Metrics.Phase.SENSOR, nanos);
+			Simulate.metrics.phase(Metrics.Phase.WAREHOUSE_SENSORS, nanos);
+		}
+		schedule(time + periods[location], SENSOR, location);
+	}
+}
@@ -2,31 +2,30 @@ package com.instaclustr.kongo2;
 
 /*
  * Sensor objects are for warehouse and truck environmental metric values.
+ * Compact representation: the metric, a primitive value and the int id of the location, see Locations.
  */
 
 public class Sensor {  
 
 	long time;
-	String doc;
-	String tag;
-	String metric;
+	Metric metric;
 	double value;
+	int location;
 
-	public Sensor(long time, String doc, String tag, String metric, double value) {
+	public Sensor(long time, Metric metric, double value, int location) {
 		this.time = time;
-		this.doc = doc;
-		this.tag = tag;
 		this.metric = metric;
 		this.value = value;
+		this.location = location;
 	}
 	
 	public void print()
 	{
-		System.out.println(time + ", " + doc + ", " + tag + ", " + metric + "=" + value);
+		System.out.println(toStr());
 	}
 	
 	public String toStr()
 	{
-		return time + ", " + doc + ", " + tag + ", " + metric + "=" + value;
+		return time + ", SENSOR, " + Locations.key(location) + ", " + metric.label + "=" + value;
 	}
 }
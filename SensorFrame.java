@@ -0,0 +1,60 @@
+package com.instaclustr.kongo2;
+
+import java.util.Arrays;
+
+/*
+ * SensorFrame events carry all the sensor metric readings for one warehouse or truck location at one time,
+ * so each location produces one event per hour rather than one Sensor event per metric.
+ * Readings are held in a primitive array indexed by Metric ordinal, NaN if the metric isn't measured at the location.
+ */
+
+public class SensorFrame
+{
+	long time;
+	int location;	// see Locations
+	final double[] values = new double[Metric.VALUES.length];
+	int readings = 0;	// number of metrics with a value
+	
+	public SensorFrame(long time, int location)
+	{
+		this.time = time;
+		this.location = location;
+		Arrays.fill(values, Double.NaN);
+	}
+	
+	// reuse the frame for another location and time, with no readings
+	public void reset(long time, int location)
+	{
+		this.time = time;
+		this.location = location;
+		Arrays.fill(values, Double.NaN);
+		readings = 0;
+	}
+	
+	public void set(Metric metric, double value)
+	{
+		int m = metric.ordinal();
+		if (Double.isNaN(values[m]))
+			readings++;
+		values[m] = value;
+	}
+	
+	public boolean has(Metric metric)
+	{
+		return !Double.isNaN(values[metric.ordinal()]);
+	}
+	
+	public double get(Metric metric)
+	{
+		return values[metric.ordinal()];
+	}
+	
+	public String toStr()
+	{
+		String s = time + ", SENSOR FRAME, " + Locations.key(location);
+		for (Metric m : Metric.VALUES)
+			if (has(m))
+				s += ", " + m.label + "=" + get(m);
+		return s;
+	}
+}
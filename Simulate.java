@@ -10,17 +10,14 @@
  * 
  * Introduced explicit event types and pub-sub of events using Guava Event Bus.
  * Need the Guava jar in the path. https://github.com/google/guava/wiki/EventBusExplained
+ * Build with gradle build, benchmarks of the hot paths are in the jmh project.
  */
 
 package com.instaclustr.kongo2;
 
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-
-import com.google.common.*;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
-import com.google.common.eventbus.SubscriberExceptionContext;
+import java.util.concurrent.ForkJoinPool;
 
 public class Simulate {
 
@@ -32,314 +29,569 @@ public class Simulate {
 	static boolean debug = false;
 	static boolean verbose = true;
 	
-	// global data. all goods in the system (in trucks or warehouses)
-	static HashMap<String, Goods> allGoods = new HashMap<String, Goods>();
+	// post all the sensor readings for a location as one SensorFrame event, rather than a Sensor event per metric
+	static boolean sensorFrames = true;
+	
+	// direct dispatch checks sensor events once per goods signature group at a location rather than once per goods
+	static boolean signatureGroups = true;
+	
+	// global data. Goods, warehouses and trucks are identified by dense int ids, the RFID tag/id Strings are only labels.
+	// all goods in the system (in trucks or warehouses), their categories and properties, indexed by Goods.id
+	static GoodsStore goodsStore = new GoodsStore(1024);
+	
+	// all warehouses, in order of creation
+	static ArrayList<Warehouses> allWarehouses = new ArrayList<Warehouses>();
+	
+	// the warehouses by temperature control, for picking compatible warehouses for goods and trucks
+	static WarehouseIndex warehouseIndex = null;
+	
+	// the warehouses by x, y location, for routing trucks
+	static WarehouseGrid warehouseGrid = null;
+	
+	// routing: trucks go to a random warehouse within truckRange of where they are (or the nearest one if there are none),
+	// taking a travel time of distance / truckSpeed hours, at least 1. On the road they don't load or unload, but their sensors still report.
+	// otherwise trucks go anywhere in an hour
+	static boolean routing = false;
+	static double truckRange = 3;
+	static double truckSpeed = 2;
+	static ArrayList<Warehouses> nearby = new ArrayList<Warehouses>();
 	
-	// all warehouses
-	static HashMap<String, Warehouses> allWarehouses = new HashMap<String, Warehouses>();
+	// scheduled: run the simulation as a discrete event Scheduler instead of hourly turns, with times in minutes.
+	// trucks stay at a warehouse for dwell minutes, take travel minutes to get to the next one without routing,
+	// and each warehouse and truck reports its sensors every sensorPeriod minutes or so
+	static boolean scheduled = false;
+	static int dwell = 30;
+	static int travel = 30;
+	static int sensorPeriod = 60;
 	
-	// all goods that are in warehouses
-	static HashMap<String, String> goodsInWarehouses = new HashMap<String, String>();
+	// location id of the warehouse each goods is in, indexed by Goods.id, -1 if not in a warehouse.
+	// partitions update them in parallel, but only for the goods at their own warehouse and trucks
+	static int[] goodsInWarehouses = new int[0];
 	
-	// all goods that are in trucks
-	static HashMap<String, String> goodsInTrucks = new HashMap<String, String>();
+	// location id of the truck each goods is in, -1 if not in a truck
+	static int[] goodsInTrucks = new int[0];
 
-	// all trucks
-	static HashMap<String, Trucks> allTrucks = new HashMap<String, Trucks>();
+	// all trucks, in order of creation
+	static ArrayList<Trucks> allTrucks = new ArrayList<Trucks>();
 	
-	// trucks at each warehouse
-	static HashMap<String, String> trucksAtWarehouses = new HashMap<String, String>();
+	// location id of the warehouse each truck is at, indexed by truck location id
+	static int[] trucksAtWarehouses = new int[0];
 	
-	// topics using Event Bus.
+	// how events are delivered to subscribers, with the Guava Event Bus or the direct dispatcher,
+	// or through a ring buffer to the direct dispatcher on another thread, or on a serial lane per location (see Lanes)
+	public enum Dispatch { GUAVA, DIRECT, RING, LANES }
+	static Dispatch dispatch = Dispatch.DIRECT;
+	
+	// RING dispatch: the ring shared by all the topics, created with the first topic. Multi producer if partitions run in parallel.
+	// ringSize is rounded up to a power of 2, ringWait is what producers and the consumer do while they wait, see RingBuffer.Wait
+	static RingBuffer ring = null;
+	static int ringSize = 1 << 14;
+	static RingBuffer.Wait ringWait = RingBuffer.Wait.YIELD;
+	
+	// LANES dispatch: the lanes shared by all the topics, numLanes rings of ringSize
+	static Lanes lanes = null;
+	static int numLanes = Runtime.getRuntime().availableProcessors();
+	
+	// topics using Event Bus or direct dispatch, see Topic.
 	// topics are warehouse or truck locations and receive all sensor events for those locations.
 	// each Goods object is subscribed to the topic where it's currently located.	
-	static HashMap<String, EventBus> topics = new HashMap<String, EventBus>(1000);
+	// indexed by location id, see Locations and newLocation
+	static Topic[] topics = new Topic[0];
 	// Also have a topic for rfid load and unload events.
-	static EventBus rfidLoadTopic = null;
-	static EventBus rfidUnloadTopic = null;
+	static Topic rfidLoadTopic = null;
+	static Topic rfidUnloadTopic = null;
+	
+	// per phase times, per hour event counts and post latencies of the loop, written to metricsFile.json and .csv if not null, see Metrics
+	static Metrics metrics = null;
+	static String metricsFile = null;
+	
+	// binary journal of all the RFID and sensor events, null for none
+	static Journal journal = null;
+	
+	// world Snapshot to write once the world is created, or to restore instead of creating the world, null for none
+	static String saveFile = null;
+	static String restoreFile = null;
+	
+	// rule violations are published as RuleViolationEvents on the violations topic, and written by the ViolationSink on its own thread.
+	// violationsFile "-" is System.out. When the sink queue is full, BLOCK waits for room and DROP drops the violation.
+	static Topic violationTopic = null;
+	static ViolationSink violationSink = null;
+	static String violationsFile = "violations.log";
+	static int violationsQueue = 1 << 16;
+	static ViolationSink.Policy violationsPolicy = ViolationSink.Policy.BLOCK;
+	
+	// publish a violation, printed straight away if there is no violations topic (e.g. no world)
+	public static void violation(RuleViolationEvent event)
+	{
+		if (JfrEvents.enabled(JfrEvents.VIOLATION))
+			JfrEvents.violation(event);
+		if (violationTopic != null)
+			violationTopic.post(event);
+		else
+			System.out.println(event.toStr());
+	}
+	
+	// start the sink thread and subscribe it to the violations topic
+	public static void startViolations()
+	{
+		stopViolations();
+		violationSink = new ViolationSink(violationsFile, violationsQueue, violationsPolicy);
+		violationTopic.register(violationSink);
+	}
+	
+	// unsubscribe the sink and wait for it to write everything published so far
+	public static void stopViolations()
+	{
+		if (violationSink == null)
+			return;
+		drain();
+		violationTopic.unregister(violationSink);
+		violationSink.close();
+	}
+	
+	// create a topic for the current dispatch mode
+	public static Topic newTopic(String identifier)
+	{
+		switch (dispatch)
+		{
+			case GUAVA: return new GuavaTopic(identifier);
+			case RING:
+				if (ring == null)
+					ring = new RingBuffer(ringSize, parallel ? RingBuffer.Producer.MULTI : RingBuffer.Producer.SINGLE, ringWait);
+				return new RingTopic(identifier, ring);
+			case LANES:
+				if (lanes == null)
+					lanes = new Lanes(numLanes, ringSize, parallel ? RingBuffer.Producer.MULTI : RingBuffer.Producer.SINGLE, ringWait);
+				return new LaneTopic(identifier, lanes);
+			default: return new DirectTopic(identifier);
+		}
+	}
+	
+	public static String dispatchName()
+	{
+		switch (dispatch)
+		{
+			case GUAVA: return "Guava Event Bus";
+			case RING: return "ring buffer dispatch" + (parallel ? " (multi producer)" : "");
+			case LANES: return "dispatch on " + lanes.lanes.length + " location lanes";
+			default: return "direct dispatch";
+		}
+	}
+	
+	// wait for the handlers of every event posted so far, only RING and LANES dispatch handle events later
+	public static void drain()
+	{
+		if (ring != null)
+			ring.drain();
+		if (lanes != null)
+			lanes.drain();
+	}
 
-	// truckKey and keep1 are hacks used in Goods loading code in the simulation loop.	
-	static String truckKey;
+	// allocate the location id for a warehouse or truck and create its topic
+	public static int newLocation(String key)
+	{
+		int id = Locations.add(key);
+		if (id >= topics.length)
+		{
+			int n = Math.max(16, id * 2);
+			topics = Arrays.copyOf(topics, n);
+			trucksAtWarehouses = Arrays.copyOf(trucksAtWarehouses, n);
+		}
+		topics[id] = newTopic(key);
+		trucksAtWarehouses[id] = -1;
+		return id;
+	}
+
+	// move truck to warehouse, keeping trucksAtWarehouses and the warehouse Docks in step
+	public static void dockTruck(Trucks truck, Warehouses warehouse)
+	{
+		trucksAtWarehouses[truck.locationId] = warehouse.locationId;
+		warehouse.docks.dock(truck);
+		truck.warehouse = warehouse;
+	}
 	
-	// keep truck key first time, and then randomly 50% of time for others
-	public static void keep1(String s)
+	// put truck on the road to warehouse, arriving at the end of the move step of hour arrival. It isn't at a warehouse until then
+	public static void departTruck(Trucks truck, Warehouses warehouse, long arrival)
 	{
-		if (truckKey == null || rand.nextBoolean())
-			truckKey = s;	
+		trucksAtWarehouses[truck.locationId] = -1;
+		warehouse.inbound.dock(truck);
+		truck.warehouse = warehouse;
+		truck.arrival = arrival;
 	}
 	
-	static Random rand = new Random();
+	// destination for a truck leaving from: a random warehouse within truckRange, else the nearest, that it can deliver to if enforcing temp rules.
+	// null if there isn't one
+	static Warehouses route(Trucks truck, Warehouses from)
+	{
+		int buckets = enforceTempRules ? WarehouseIndex.truckBuckets(truck) : WarehouseIndex.ALL_BUCKETS;
+		nearby.clear();
+		int n = warehouseGrid.within(from.x, from.y, truckRange, buckets, nearby);
+		// draw again if we get the warehouse the truck is at, there is another one
+		if (n > 1 || n == 1 && nearby.get(0) != from)
+			while (true)
+			{
+				Warehouses w = nearby.get(rand.nextInt(n));
+				if (w != from)
+					return w;
+			}
+		return warehouseGrid.nearest(from.x, from.y, buckets, from);
+	}
 	
-	// simulation loop, simulates Goods and Trucks movement for required number of rounds (hours)
-	// assumes everything has been created already.
-	public static void loop(int hours)
+	// hours to travel between warehouses
+	static long travelTime(Warehouses from, Warehouses to)
 	{
-		long t0 = System.currentTimeMillis();
-		long totalEvents = 0;
+		return Math.max(1, (long) Math.ceil(WarehouseGrid.distance(from, to) / truckSpeed));
+	}
+	
+	// run unload, load and sensor phases for all warehouse partitions in parallel on the pool, or one after another.
+	// both modes give the same results for a given seed.
+	static boolean parallel = false;
+	static ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	// master seed for all the random choices made creating the world and by the simulation loop.
+	// Each user of random numbers gets its own stream split from the master stream, so there is no sharing between threads,
+	// and no allocation per random number. The same seed gives the same world and the same simulation.
+	static long seed = System.nanoTime();
+	static SplittableRandom random = new SplittableRandom(seed);
+	// stream for the sequential truck move step
+	static SplittableRandom rand = null;
+	
+	public static void setSeed(long s)
+	{
+		seed = s;
+		random = new SplittableRandom(s);
+	}
+	
+	// one partition per warehouse, see Partition
+	static List<Partition> partitions = null;
+	
+	// run a phase for every partition, returns the number of events produced.
+	// unload and load read the goods at locations, so wait for the events of the previous phases to be handled first.
+	// this is the barrier between phases for LANES too, and before the sensor phase as the trucks loaded have moved to other lanes
+	public static long runPhase(Partition.Phase phase, long time)
+	{
+		JfrEvents.Phase jfr = JfrEvents.enabled(JfrEvents.PHASE) ? JfrEvents.phase(phase.name(), time, -1, goodsStore.size()) : null;
+		long t0 = System.nanoTime();
+		if (phase != Partition.Phase.SENSOR || lanes != null)
+			drain();
+		if (parallel)
+			pool.invoke(new Partition.PhaseTask(partitions, 0, partitions.size(), phase, time));
+		else
+			for (Partition p : partitions)
+				p.run(phase, time);
+		long t1 = System.nanoTime();
 		
-		// repeat for hours
-		System.out.println("****** Kongo V2 with Guava Event Bus");
-		System.out.println("Simulation started");
+		long allocated = 0;
+		for (Partition p : partitions)
+			for (Metrics.Phase mp : Metrics.Phase.VALUES)
+				allocated += p.allocated[mp.ordinal()];
+		long events = collectPartitions();
+		if (metrics != null)
+			metrics.phase(Metrics.phase(phase), t1 - t0);
+		if (jfr != null)
+		{
+			jfr.events = events;
+			jfr.allocated = allocated;
+			jfr.commit();
+		}
+		return events;
+	}
+	
+	// end of an hour: wait for its events to be handled (RING and LANES), so the violations they caused are counted in it.
+	// The wait is part of the SENSOR phase
+	static void endHour(long time)
+	{
+		long t0 = System.nanoTime();
+		drain();
+		metrics.phase(Metrics.Phase.SENSOR, System.nanoTime() - t0);
+		metrics.endHour(time, violationSink.published());
+	}
+	
+	// add the events, counts and times of the partitions to the metrics and start them again from 0, returns the number of events
+	static long collectPartitions()
+	{
+		long events = 0;
+		for (Partition p : partitions)
+		{
+			events += p.events;
+			p.events = 0;
+			if (metrics != null)
+			{
+				for (Metrics.Count c : Metrics.Count.VALUES)
+					metrics.count(c, p.counts[c.ordinal()]);
+				for (Metrics.Phase mp : Metrics.Phase.VALUES)
+				{
+					metrics.phase(mp, p.nanos[mp.ordinal()]);
+					metrics.allocated(mp, p.allocated[mp.ordinal()]);
+				}
+			}
+			Arrays.fill(p.counts, 0);
+			Arrays.fill(p.nanos, 0);
+			Arrays.fill(p.allocated, 0);
+		}
+		return events;
+	}
+	
+	// set up the random number stream and partitions used by the simulation loop phases
+	public static void startLoop()
+	{
+		rand = random.split();
+		startViolations();
+		partitions = new ArrayList<Partition>();
+		for (Warehouses w : allWarehouses)
+			partitions.add(new Partition(w, random.split()));
+		if (metrics != null)
+			metrics.unregister();
+		metrics = new Metrics();
+		metrics.register();
+	}
+	
+	// count the last violations and collect the latencies of the run from the partitions and ring consumers, call after drain()
+	static void endMetrics()
+	{
+		for (Partition p : partitions)
+			metrics.addPost(p.latency);
+		if (ring != null)
+			metrics.addHandled(ring.handled);
+		if (lanes != null)
+			for (RingBuffer lane : lanes.lanes)
+				metrics.addHandled(lane.handled);
+	}
+	
+	// 3 Move TRUCKS to a random warehouse
+	public static void moveTrucks(long time)
+	{
+		JfrEvents.Phase jfr = JfrEvents.enabled(JfrEvents.PHASE) ? JfrEvents.phase("MOVE", time, -1, goodsStore.size()) : null;
+		long t0 = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		if (routing)
+		{
+			routeTrucks(time);
+			bytes = Metrics.allocatedBytes() - bytes;
+			endMove(jfr, t0, bytes);
+			return;
+		}
+		// with temp rules each truck draws from the warehouses it can deliver to, else from a shuffled list of all warehouses
+		int[] order = null;
+		if (!enforceTempRules)
+		{
+			order = new int[allWarehouses.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			shuffle(order, rand);
+		}
+		int next = 0;
 		
-		// loop the loop
-		for (int time=0; time < hours; time++)
+		for (Trucks truck : allTrucks)
 		{
-			System.out.println("************** Time = " + time);
-			
-			// 1 UNLOAD trucks: move goods from trucks to warehouse where truck docked
-			if (debug) System.out.println("Unloading goods from Trucks...");
+			int currentLoc = trucksAtWarehouses[truck.locationId];
 			
-			// Unload all Goods that are in trucks
-			Iterator<String> it = goodsInTrucks.keySet().iterator();
-			while (it.hasNext())
+			Warehouses w;
+			if (enforceTempRules)
 			{
-			    String goodsKey = it.next();
-			    String trucksKey = goodsInTrucks.get(goodsKey);
-			    			    
-			    // find warehouse where the truck is
-			    String warehouse = trucksAtWarehouses.get(trucksKey);
-			    // change location of goods to warehouse
-			    goodsInWarehouses.put(goodsKey, warehouse);
-			    if (debug) System.out.println("Unloaded " + goodsKey + " from " + trucksKey + " at " + warehouse); 
-			    
-			    // generate UNLOAD RFID event: At time, unload goodsKey from trucksKey at warehouse
-			    String s = time + " RFID " + warehouse + ": UNLOAD " +  goodsKey + " from " + trucksKey;
-			    if (verbose) System.out.println(s);
-			    
-			    // public RFIDUnloadEvent(long time, String goodsKey, String truckKey, String warehouseKey)
-				RFIDUnloadEvent ule = new RFIDUnloadEvent(time, goodsKey, trucksKey, warehouse);
-				rfidUnloadTopic.post(ule);
-			    
-			    totalEvents++;
-			    it.remove();
-			    // forget categories of loaded goods
-			    Trucks t = allTrucks.get(trucksKey);
-			    t.resetCats();
+				// a warehouse with a compatible temperature control, if there isn't one the truck stays where it is
+				w = warehouseIndex.randomForTruck(truck, rand);
+				if (w == null)
+					continue;
 			}
-			
-			// 2 LOAD Goods from warehouse to trucks currently docked at warehouse
-			
-			if (debug) System.out.println("Loading goods onto trucks");
-			it = goodsInWarehouses.keySet().iterator();
-			while (it.hasNext())
+			else
 			{
-				String goodsKey = it.next();
-				String warehouseKey = goodsInWarehouses.get(goodsKey);
-			    
-			    // randomly decide if we want to load this good, check if there is a truck at the warehouse, load it, remove it from warehouse
-				if (debug) System.out.println("Found goods " + goodsKey + " in " + warehouseKey + " try and load it? ");
-			    if (rand.nextDouble() > 0.5)
-			    {
-			    	    truckKey = null;
-			    		Map<String, String> map = trucksAtWarehouses;
-			    	    map.entrySet()
-			    	    .stream()
-			    	    .filter(x -> x.getValue().equals(warehouseKey))
-			    	    // hack need to pick 1 truck at random
-			    	    .forEach(x -> keep1(x.getKey()));
-			   
-			    	   // if a truck was found...
-			    	   if (truckKey != null)
-			    	   {
-			    		   if (debug) System.out.println("Found a truck at warehouse " + truckKey);
-			    		   // load truck, remove goods from warehouse
-			    		   Trucks t = allTrucks.get(truckKey);
-			    		   Goods g = allGoods.get(goodsKey);
-			    		   // can we load the Goods onto it?
-			    		   boolean load = false;
-			    		   load = g.allowedInTruck(t.categoriesOnBoard);
-			    		
-			    		   if (verbose && load) System.out.println("Goods allowed in truck, goods cats=" + g.categories + " no conflict with truck cats=" + t.categoriesOnBoard.allCategories());
-			    		   else if (verbose && !load) System.out.println("Goods NOT ALLOWED in truck, goods cats=" + g.categories + " conflict with truck cats=" + t.categoriesOnBoard.allCategories());
-			    		
-			    		   // keep loading if we can load it or we don't care about enforcing rules
-			    		   if (!enforceHazardousRules || enforceHazardousRules && load)
-			    		   {
-			    			   // check temperature control rules
-			    			   if (load = g.truckTempRules(t))
-			    				   if (verbose) System.out.println("Goods allowed on truck for temperature rules check");
-			    				   else if (verbose) System.out.println("Goods NOT ALLOWED on truck for temperature rules check");
-				    		
-			    			   if (!enforceTempRules || enforceTempRules && load)
-			    			   {
-			    				   t.updateCategories(g);
-			    				   goodsInTrucks.put(goodsKey, truckKey);
-			    				   it.remove();
-			    				   if (debug) System.out.println("Loading " + goodsKey + " onto " + truckKey);
-				    	
-			    				   // generate RFID LOAD event
-			    				   String s = time + " RFID " + warehouseKey + ": LOAD " +  goodsKey + " onto " + truckKey;
-			    				   if (verbose) System.out.println(s);
-			    				   
-			    				   // Order of constructor is; public RFIDLoadEvent(long time, String goodsKey, String warehouseKey, String truckKey)
-			    				   RFIDLoadEvent le = new RFIDLoadEvent(time, goodsKey, warehouseKey, truckKey);
-			    				   rfidLoadTopic.post(le);
-			    				   
-			    				   totalEvents++;
-			    			   }
-			    		   }
-			    	   }
-			    }
+				if (next == order.length)
+					next = 0;
+				w = allWarehouses.get(order[next++]);
 			}
 			
-			// 3 Move TRUCKS
+			dockTruck(truck, w);
 			
-			// create shuffled list of warehouses to select destination warehouse from
-			List<String> keyList = new ArrayList<String>(allWarehouses.keySet());
-			Collections.shuffle( keyList );
-			Iterator<String> randKeys = keyList.iterator();
-			
-			for (Map.Entry<String, String> entry : trucksAtWarehouses.entrySet())
+			if (verbose) System.out.println(time + " Truck " + truck.id + " temp cat=" + truck.tempRange + " moving from " + Locations.key(currentLoc) + " to " + w.id + " with temp cat=" + w.tempRange);
+		}
+		bytes = Metrics.allocatedBytes() - bytes;
+		endMove(jfr, t0, bytes);
+	}
+	
+	static void endMove(JfrEvents.Phase jfr, long t0, long bytes)
+	{
+		if (metrics != null)
+		{
+			metrics.phase(Metrics.Phase.MOVE, System.nanoTime() - t0);
+			metrics.allocated(Metrics.Phase.MOVE, bytes);
+		}
+		if (jfr != null)
+		{
+			jfr.events = allTrucks.size();
+			jfr.allocated = bytes;
+			jfr.commit();
+		}
+	}
+	
+	// 3 with routing: trucks arriving this hour dock, docked trucks leave for a warehouse nearby, docking this hour if it is an hour or less away
+	static void routeTrucks(long time)
+	{
+		for (Trucks truck : allTrucks)
+		{
+			Warehouses from = truck.warehouse;
+			if (trucksAtWarehouses[truck.locationId] < 0)
 			{
-				String truckKey = entry.getKey();
-				Trucks truck = allTrucks.get(truckKey);
-				String currentLoc = entry.getValue();
-				String destination = null;;
-				
-				// find a warehouse with a compatible temperature control
-				Warehouses w = null;
-				while (destination == null)
+				if (truck.arrival <= time)
 				{
-					if (randKeys.hasNext())
-						destination = randKeys.next();
-					else
-					{
-						// else start again
-						randKeys = keyList.iterator();
-						destination = randKeys.next();
-					}
-					// does destination warehouse have compatible climate control to the truck temp control?
-					w = allWarehouses.get(destination);
-					if (!enforceTempRules || truck.canDeliverToWarehouse(w))
-						break;
-					// no good so keep looking
-					else destination = null;
+					dockTruck(truck, from);
+					if (verbose) System.out.println(time + " Truck " + truck.id + " arrived at " + from.id);
 				}
-				
-				trucksAtWarehouses.put(truckKey, destination);
-				
-				if (verbose) System.out.println(time + " Truck " + truckKey + " temp cat=" + truck.tempRange + " moving from " + currentLoc + " to " + destination + " with temp cat=" + w.tempRange);
+				continue;
 			}
 			
-			// 4 SENSOR stream, simple version, each warehouse and truck produce only out one value per sensor metric per location per hour
-			// This is a very inefficient implementation as it checks rules for all goods in each truck every sensor event
-			Sensor sensor;
+			// if there is nowhere to go the truck stays where it is
+			Warehouses to = route(truck, from);
+			if (to == null)
+				continue;
+			long hours = travelTime(from, to);
+			if (hours == 1)
+				dockTruck(truck, to);
+			else
+				departTruck(truck, to, time + hours - 1);
 			
-			// Truck SENSOR stream
-			// New version posts to topics			
-			for (String truckskey : allTrucks.keySet())
+			if (verbose) System.out.println(time + " Truck " + truck.id + " temp cat=" + truck.tempRange + " leaving " + from.id + " for " + to.id + " with temp cat=" + to.tempRange + ", " + hours + " hours away");
+		}
+	}
+	
+	// simulation loop, simulates Goods and Trucks movement for required number of rounds (hours)
+	// assumes everything has been created already. Returns the number of events
+	public static long loop(int hours)
+	{
+		long t0 = System.nanoTime();
+		long totalEvents = 0;
+		
+		startLoop();
+		
+		// repeat for hours
+		System.out.println("****** Kongo V2 with " + dispatchName() + (parallel ? ", parallel" : ", sequential") + (sensorFrames ? ", sensor frames" : ", sensor events") + (scheduled ? ", scheduled" : "") + ", seed " + seed);
+		System.out.println("Simulation started");
+		
+		// only the trucks and sensors with actions due do anything
+		if (scheduled)
+			totalEvents = new Scheduler().run(hours);
+		else
+		{
+			// loop the loop
+			for (int time=0; time < hours; time++)
 			{
-				Trucks truck = allTrucks.get(truckskey);
-				
-				// find the topic corresponding to the location of the truck
-				EventBus topic = topics.get(truckskey);
-				
-				if (topic != null)
-				{
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "temp", truck.temp.randomTempInRange());
-					topic.post(sensor);
-					
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "humidity", randBetween(0, 100));
-					topic.post(sensor);
-				
-					// lux https://en.wikipedia.org/wiki/Lux range 0 - 100,000 (direct sunlight), 500 is office lighting, unit is lux
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "illuminance", randBetween(0, 100000));
-					topic.post(sensor);
-					
-					// acceleration, in standard gravities i.e. 0, 1, 100? Normal should be < 1g? fast car accel if about 0.5g
-					// roller coaster is 3-4g
-					// car https://physics.info/acceleration/ F1 could be up to 3g! A truck should be < 1g
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "acceleration", randBetween(0, 100));
-					topic.post(sensor);
-					
-					// vibration has amplitude and frequency (but sensors produce data for multiple frequencies!)
-					// freq is Hz (0-100000), amp is ms-2 (0-?)
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "vibrationDisplacement", randBetween(0, 1000));
-					topic.post(sensor);
-					
-					sensor = new Sensor(time, "SENSOR TRUCK", truckskey, "vibrationVelocity", randBetween(0, 1000));
-					topic.post(sensor);
-					
-					totalEvents += 6;
-				}
-			}
+				System.out.println("************** Time = " + time);
+				if (journal != null) journal.hour(time);
 			
-			// Warehouse SENSOR stream
-			// New version posts sensor event to correct warehouse location topic
+				// 1 UNLOAD trucks: move goods from trucks to warehouse where truck docked
+				// runPhase is the hour barrier, it waits for the last hour's events to be handled first (RING and LANES)
+				if (debug) System.out.println("Unloading goods from Trucks...");
+				totalEvents += runPhase(Partition.Phase.UNLOAD, time);
 			
-			for (String warehouseKey : allWarehouses.keySet())
-			{
-				Warehouses warehouse = allWarehouses.get(warehouseKey);
-				
-				// find the topic corresponding to the warehouse location
-				EventBus topic = topics.get(warehouseKey);
-				if (topic != null)
-				{				
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "temp", warehouse.temp.randomTempInRange());
-					topic.post(sensor);
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "humidity", randBetween(0, 100));
-					topic.post(sensor);
-				
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "illuminance", randBetween(0, 100000));
-					topic.post(sensor);
+				// 2 LOAD Goods from warehouse to trucks currently docked at warehouse
+				if (debug) System.out.println("Loading goods onto trucks");
+				totalEvents += runPhase(Partition.Phase.LOAD, time);
 			
-					// Nasty gases: ozone, particulate matter, toxic gas (Propane, Butane, LPG and Carbon Monoxide.), sulfur dioxide, and nitrous oxide
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "ozone", randBetween(0, 10000));
-					topic.post(sensor);		
-				
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "particles", randBetween(0, 10000));
-					topic.post(sensor);
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "toxicGas", randBetween(0, 10000));
-					topic.post(sensor);
-					
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "sulfurDioxide", randBetween(0, 10));
-					topic.post(sensor);
-	
-					sensor = new Sensor(time, "SENSOR WAREHOUSE", warehouseKey, "nitrousOxides", randBetween(0, 10));
-					topic.post(sensor);
-	
-					// old code was:
-					// checkGoodsInWarehouse(warehouseKey, sensor);
-					
-					totalEvents += 8;
-				}
+				// 3 Move TRUCKS
+				// this is the merge step between partitions so is always sequential
+			
+				moveTrucks(time);
+			
+				// 4 SENSOR stream for each warehouse and the trucks docked at it
+				totalEvents += runPhase(Partition.Phase.SENSOR, time);
+			
+				endHour(time);
 			}
 		}
 		
+		drain();
 		System.out.println("Simulation ended");
-		long t1 = System.currentTimeMillis();
-		double duration = (t1 - t0)/1000.0;
+		long t1 = System.nanoTime();
+		endMetrics();
+		stopViolations();
+		if (journal != null)
+		{
+			// so a replay can check it gets the same violations
+			journal.meta.setProperty("violations", Long.toString(violationSink.published()));
+			journal.meta.setProperty("stateHash", Long.toString(stateHash()));
+			journal.close();
+		}
+		double duration = (t1 - t0)/1e9;
 		System.out.println("Simulation duration (s) = " + duration);
 		double eventsSec = totalEvents/duration;
 		System.out.println("Events = " + totalEvents + ". Rate (Events/s) = " + eventsSec);
+		System.out.println("Violations = " + violationSink.published() + ", dropped = " + violationSink.dropped() + (violationsFile.equals("-") ? "" : ", written to " + violationsFile));
+		System.out.println("World state hash = " + stateHash());
+		System.out.print(metrics.summary());
+		if (metricsFile != null)
+		{
+			metrics.write(metricsFile);
+			System.out.println("Metrics written to " + metricsFile + ".json and " + metricsFile + ".csv");
+		}
+		return totalEvents;
 	}
-
-	public static double randBetween(double min, double max)
+	
+	// Fisher-Yates shuffle
+	static void shuffle(int[] a, SplittableRandom r)
+	{
+		for (int i = a.length - 1; i > 0; i--)
+		{
+			int j = r.nextInt(i + 1);
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+	
+	// hash of where all the goods are, in id order so it doesn't depend on the order partitions ran, to compare sequential and parallel runs
+	public static long stateHash()
 	{
-		return (rand.nextDouble() * (max-min)) + min;
+		long h = 0;
+		for (int id = 0; id < goodsInWarehouses.length; id++)
+			h = 31 * h + 1000003L * goodsInWarehouses[id] + goodsInTrucks[id];
+		for (Trucks t : allTrucks)
+			h = 31 * h + t.categoriesOnBoard();
+		return h;
 	}
 
-	public static void main(String[] args) 
-	{		
-		
-		// Parameters, how many Goods, warehouse locations and trucks, and hours to run simulation.
-		int numGoods = 1000;
-		int maxX = 10;
-		int maxY = 10;
-		int numWarehouses = maxX * maxY;
-		int numTrucks = numWarehouses*2;
-		int loops = 10;
+	// forget the world so a new one can be created, e.g. between benchmark runs
+	public static void reset()
+	{
+		goodsStore.clear();
+		allWarehouses.clear();
+		warehouseIndex = null;
+		warehouseGrid = null;
+		goodsInWarehouses = new int[0];
+		goodsInTrucks = new int[0];
+		allTrucks.clear();
+		trucksAtWarehouses = new int[0];
+		stopViolations();
+		violationSink = null;
+		if (ring != null)
+			ring.close();
+		ring = null;
+		if (lanes != null)
+			lanes.close();
+		lanes = null;
+		if (metrics != null)
+			metrics.unregister();
+		metrics = null;
+		topics = new Topic[0];
+		Locations.clear();
+		rfidLoadTopic = null;
+		rfidUnloadTopic = null;
+		violationTopic = null;
+		partitions = null;
+	}
 	
+	// create the world: Goods, a maxX by maxY grid of warehouses, Trucks, their locations and topics
+	public static void createWorld(int numGoods, int maxX, int maxY, int numTrucks)
+	{
 		// CREATION
-		// create random Goods in a hashMap
+		// world random number stream, split from the master so the same seed creates the same world
+		SplittableRandom worldRand = random.split();
+		
+		// create random Goods in the goods store
+		goodsStore.ensureCapacity(numGoods);
 		for (int i = 0; i < numGoods; i++)
 		{
-			 Goods g = new Goods();
-			 allGoods.put(g.tag, g);
-	         String s = g.toStr();
-	         System.out.println(s);
+			 Goods g = new Goods(worldRand);
+	         if (verbose) System.out.println(g.toStr());
 		}
 	
 		System.out.println("Goods created = " + numGoods);
@@ -347,58 +599,44 @@ public class Simulate {
 		// create warehouses
 		// Also create a topic per warehouse
 	
-		String aWarehouse = null;
-	
 		for (int x = 0; x < maxX; x++)
 		{
 			for (int y = 0; y < maxY; y++)
 			{
-				Warehouses w = new Warehouses(x, y);
-				if (aWarehouse == null)
-					aWarehouse = w.id;
-				allWarehouses.put(w.id, w);
-				String s = w.toStr();
-				System.out.println(s);
-				
-				// create a topic for each warehouse
-				EventBus eb = new EventBus(w.id);
-				topics.put(w.id, eb);
+				Warehouses w = new Warehouses(x, y, worldRand);
+				w.locationId = newLocation(w.id);
+				allWarehouses.add(w);
+				if (verbose) System.out.println(w.toStr());
 			}
 		}
+		Warehouses aWarehouse = allWarehouses.get(0);
+		warehouseIndex = new WarehouseIndex(allWarehouses);
+		warehouseGrid = new WarehouseGrid(allWarehouses);
 	
 		System.out.println("Warehouses created = " + maxX*maxY);
 	
 		
-		// find warehouses with compatible environmental controls to put Goods in
-		for (String goodskey : allGoods.keySet())
+		// put Goods in random warehouses with compatible environmental controls
+		int numAllGoods = goodsStore.size();
+		goodsInWarehouses = new int[numAllGoods];
+		goodsInTrucks = new int[numAllGoods];
+		Arrays.fill(goodsInTrucks, -1);
+		for (int id = 0; id < numAllGoods; id++)
 		{
-			Goods g = allGoods.get(goodskey);
-			boolean found = false;
-			for (String warehouseKey: allWarehouses.keySet())
-			{
-				Warehouses w = allWarehouses.get(warehouseKey);
-				if (g.warehouseTempRules(w))
-				{
-					goodsInWarehouses.put(goodskey, warehouseKey);
-					found = true;
-					break;
-				}
-			}
+			Warehouses home = warehouseIndex.randomForGoods(goodsStore.categoryMask[id], worldRand);
 			// can't find anywhere just put goods in 1st warehouse
-			if (!found) goodsInWarehouses.put(goodskey, aWarehouse);
+			if (home == null)
+				home = aWarehouse;
+			goodsInWarehouses[id] = home.locationId;
 		}
 	
 		// subscribe/register Goods to topics
 		// Note that initially all goods are in warehouses, none are on trucks.
-		for (Map.Entry<String, String> entry : goodsInWarehouses.entrySet())
+		for (int id = 0; id < numAllGoods; id++)
 		{
-			String key = entry.getKey();
-			String value = entry.getValue();
-			System.out.println(key + " in " + value);
-			
-			Goods g = allGoods.get(key);
-			EventBus topic = topics.get(value);
-			topic.register(g);
+			Goods g = goodsStore.get(id);
+			if (verbose) System.out.println(g.tag() + " in " + Locations.key(goodsInWarehouses[id]));
+			topics[goodsInWarehouses[id]].register(g);
 		}
 					
 	
@@ -408,50 +646,140 @@ public class Simulate {
 		// and a topic per truck
 		for (int i = 0; i < numTrucks; i++)
 		{
-			 Trucks t = new Trucks();
-			 t.resetCats();
-			 allTrucks.put(t.id, t);
-	         String s = t.toStr();
-	         System.out.println(s);
-	         
-	         // create a topic for each truck
-			EventBus eb = new EventBus(t.id);
-			topics.put(t.id, eb);
+			 Trucks t = new Trucks(worldRand);
+			 t.locationId = newLocation(t.id);
+			 allTrucks.add(t);
+	         if (verbose) System.out.println(t.toStr());
 		}
 		
 		System.out.println("Trucks created");
 	
-		// set Trucks locations to warehouses
-		Iterator it = allWarehouses.keySet().iterator();
-		String warehousekey;
-		for (String truckskey : allTrucks.keySet())
-		{
-			if (it.hasNext())
-				warehousekey = (String) it.next();
-			else
-				warehousekey = aWarehouse;	// else use first warehouse
-			trucksAtWarehouses.put(truckskey, warehousekey);
-		}
-		
-		for (Map.Entry<String, String> entry : trucksAtWarehouses.entrySet())
+		// set Trucks locations to warehouses, one per warehouse then the rest at the first warehouse
+		for (int i = 0; i < allTrucks.size(); i++)
 		{
-			String key = entry.getKey();
-			String value = entry.getValue();
-			System.out.println(key + " at " + value);
+			Trucks t = allTrucks.get(i);
+			dockTruck(t, i < allWarehouses.size() ? allWarehouses.get(i) : aWarehouse);
+			if (verbose) System.out.println(t.id + " at " + Locations.key(trucksAtWarehouses[t.locationId]));
 		}
 	
 		System.out.println("Truck locations created");
 		
-		// create RFID Load and Unload event topics
-		
-		rfidLoadTopic = new EventBus("load");
-		rfidUnloadTopic = new EventBus("unload");
+		createTopics();
+	}
+	
+	// create RFID Load and Unload event topics, their handlers, and the violations topic
+	static void createTopics()
+	{
+		rfidLoadTopic = newTopic("load");
+		rfidUnloadTopic = newTopic("unload");
 		RFIDLoadEvent loadHandler = new RFIDLoadEvent();
 		
 		rfidLoadTopic.register(loadHandler);
 		
 		RFIDUnloadEvent unloadHandler = new RFIDUnloadEvent();
 		rfidUnloadTopic.register(unloadHandler);
+		
+		// and the violations topic, the sink subscribes when the simulation starts
+		violationTopic = newTopic("violations");
+	}
+
+	public static void main(String[] args) 
+	{		
+		// optional arguments: dispatch mode (guava, direct, ring or lanes), ring=n and spin, yield or park for the ring or each lane, lanes=n, parallel or sequential, frames or sensors, groups or nogroups, seed=n,
+		// violations=file (- for System.out), queue=n and block or drop for the violations sink, journal=directory,
+		// metrics=name to write the run metrics to name.json and name.csv, routing with range=n and speed=n (grid units, per hour) for distance aware truck moves,
+		// scheduled with dwell=n, travel=n and sensorPeriod=n (minutes) for the discrete event Scheduler, save=file or restore=file for a world Snapshot
+		for (String arg : args)
+		{
+			if (arg.startsWith("seed="))
+				setSeed(Long.parseLong(arg.substring("seed=".length())));
+			else if (arg.equals("parallel"))
+				parallel = true;
+			else if (arg.equals("sequential"))
+				parallel = false;
+			else if (arg.equals("frames"))
+				sensorFrames = true;
+			else if (arg.equals("sensors"))
+				sensorFrames = false;
+			else if (arg.equals("groups"))
+				signatureGroups = true;
+			else if (arg.equals("nogroups"))
+				signatureGroups = false;
+			else if (arg.startsWith("metrics="))
+				metricsFile = arg.substring("metrics=".length());
+			else if (arg.startsWith("journal="))
+				journal = new Journal(arg.substring("journal=".length()));
+			else if (arg.startsWith("violations="))
+				violationsFile = arg.substring("violations=".length());
+			else if (arg.startsWith("queue="))
+				violationsQueue = Integer.parseInt(arg.substring("queue=".length()));
+			else if (arg.equals("block"))
+				violationsPolicy = ViolationSink.Policy.BLOCK;
+			else if (arg.equals("drop"))
+				violationsPolicy = ViolationSink.Policy.DROP;
+			else if (arg.startsWith("lanes="))
+				numLanes = Integer.parseInt(arg.substring("lanes=".length()));
+			else if (arg.startsWith("ring="))
+				ringSize = Integer.parseInt(arg.substring("ring=".length()));
+			else if (arg.startsWith("save="))
+				saveFile = arg.substring("save=".length());
+			else if (arg.startsWith("restore="))
+				restoreFile = arg.substring("restore=".length());
+			else if (arg.equals("scheduled"))
+				scheduled = true;
+			else if (arg.startsWith("dwell="))
+				dwell = Integer.parseInt(arg.substring("dwell=".length()));
+			else if (arg.startsWith("travel="))
+				travel = Integer.parseInt(arg.substring("travel=".length()));
+			else if (arg.startsWith("sensorPeriod="))
+				sensorPeriod = Integer.parseInt(arg.substring("sensorPeriod=".length()));
+			else if (arg.equals("routing"))
+				routing = true;
+			else if (arg.startsWith("range="))
+				truckRange = Double.parseDouble(arg.substring("range=".length()));
+			else if (arg.startsWith("speed="))
+				truckSpeed = Double.parseDouble(arg.substring("speed=".length()));
+			else if (arg.equals("spin") || arg.equals("yield") || arg.equals("park"))
+				ringWait = RingBuffer.Wait.valueOf(arg.toUpperCase());
+			else
+				dispatch = Dispatch.valueOf(arg.toUpperCase());
+		}
+		
+		// Parameters, how many Goods, warehouse locations and trucks, and hours to run simulation.
+		int numGoods = 1000;
+		int maxX = 10;
+		int maxY = 10;
+		int numWarehouses = maxX * maxY;
+		int numTrucks = numWarehouses*2;
+		int loops = 10;
+		
+		if (restoreFile != null)
+		{
+			long t0 = System.nanoTime();
+			Snapshot.restore(restoreFile);
+			System.out.println("World restored from " + restoreFile + " in " + (System.nanoTime() - t0) / 1000000 + "ms");
+		}
+		else
+			createWorld(numGoods, maxX, maxY, numTrucks);
+		if (saveFile != null)
+		{
+			Snapshot.save(saveFile);
+			System.out.println("World written to " + saveFile);
+		}
+	
+		// the journal records the world so it can be created again, with the seed of the snapshot when it was restored
+		if (journal != null)
+		{
+			journal.meta.setProperty("seed", Long.toString(seed));
+			journal.meta.setProperty("goods", Integer.toString(numGoods));
+			journal.meta.setProperty("maxX", Integer.toString(maxX));
+			journal.meta.setProperty("maxY", Integer.toString(maxY));
+			journal.meta.setProperty("trucks", Integer.toString(numTrucks));
+			journal.meta.setProperty("sensorFrames", Boolean.toString(sensorFrames));
+			journal.meta.setProperty("checkGoods", Boolean.toString(checkGoods));
+			if (restoreFile != null)
+				journal.meta.setProperty("snapshot", Paths.get(restoreFile).toAbsolutePath().toString());
+		}
 	
 		// Run the simulation for loops hours
 		loop(loops);
@@ -0,0 +1,351 @@
+package com.instaclustr.kongo2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/*
+ * Binary snapshot of the world Simulate.createWorld makes: the Goods store columns, warehouses, trucks, where each goods and truck is,
+ * and the order of the goods at each location and the trucks at each warehouse (which the simulation's random choices depend on).
+ * Restoring it gives the same world without generating it again, so short runs start fast and runs can be compared on the same world.
+ * The file is a header and then one section per column, each a little endian primitive array written and read in bulk through a memory
+ * mapped region, so restoring is dominated by making the Goods handles and registering them at their locations.
+ * RFID tags and ids are stored as the two longs of their UUID.
+ * Restoring sets the seed the world was saved with and takes the world random number stream from Simulate.random as createWorld does,
+ * so a restored world runs as the original did.
+ */
+
+public class Snapshot
+{
+	static final long MAGIC = 0x4b4f4e474f534e50L;	// KONGOSNP
+	static final int VERSION = 1;
+	static final int HEADER = 64;
+
+	// header layout, byte offsets
+	static final int H_MAGIC = 0;
+	static final int H_VERSION = 8;
+	static final int H_GOODS = 12;
+	static final int H_WAREHOUSES = 16;
+	static final int H_TRUCKS = 20;
+	static final int H_LOCATIONS = 24;
+	static final int H_MEMBERS = 28;	// ints in the members section
+	static final int H_DOCKS = 32;		// ints in the docks section
+	static final int H_SEED = 40;
+
+	final Path path;
+	final FileChannel.MapMode mode;
+	FileChannel channel;
+	long offset = HEADER;	// of the next section
+
+	Snapshot(String file, FileChannel.MapMode mode)
+	{
+		this.path = Paths.get(file);
+		this.mode = mode;
+	}
+
+	// map the next section of bytes bytes
+	MappedByteBuffer section(long bytes) throws IOException
+	{
+		MappedByteBuffer b = channel.map(mode, offset, bytes);
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		offset += bytes;
+		return b;
+	}
+
+	void put(long[] a, int n) throws IOException
+	{
+		section((long) n * Long.BYTES).asLongBuffer().put(a, 0, n);
+	}
+
+	void put(int[] a, int n) throws IOException
+	{
+		section((long) n * Integer.BYTES).asIntBuffer().put(a, 0, n);
+	}
+
+	void put(double[] a, int n) throws IOException
+	{
+		section((long) n * Double.BYTES).asDoubleBuffer().put(a, 0, n);
+	}
+
+	void get(long[] a, int n) throws IOException
+	{
+		section((long) n * Long.BYTES).asLongBuffer().get(a, 0, n);
+	}
+
+	void get(int[] a, int n) throws IOException
+	{
+		section((long) n * Integer.BYTES).asIntBuffer().get(a, 0, n);
+	}
+
+	void get(double[] a, int n) throws IOException
+	{
+		section((long) n * Double.BYTES).asDoubleBuffer().get(a, 0, n);
+	}
+
+	// most and least significant longs of the UUID in an id with a prefix
+	static void uuid(String id, String prefix, long[] msb, long[] lsb, int i)
+	{
+		UUID u = UUID.fromString(id.substring(prefix.length()));
+		msb[i] = u.getMostSignificantBits();
+		lsb[i] = u.getLeastSignificantBits();
+	}
+
+	static String id(String prefix, long msb, long lsb)
+	{
+		return prefix + new UUID(msb, lsb).toString();
+	}
+
+	// write the current world to file
+	public static void save(String file)
+	{
+		Snapshot s = new Snapshot(file, FileChannel.MapMode.READ_WRITE);
+		GoodsStore store = Simulate.goodsStore;
+		int goods = store.size();
+		int warehouses = Simulate.allWarehouses.size();
+		int trucks = Simulate.allTrucks.size();
+		int locations = Locations.size();
+		try
+		{
+			if (s.path.toAbsolutePath().getParent() != null)
+				Files.createDirectories(s.path.toAbsolutePath().getParent());
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't create the directory for snapshot " + file, e);
+		}
+		try (FileChannel channel = FileChannel.open(s.path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			s.channel = channel;
+
+			// goods
+			s.put(store.tagMsb, goods);
+			s.put(store.tagLsb, goods);
+			s.put(store.categoryMask, goods);
+			s.put(store.useByDate, goods);
+			s.put(store.weight, goods);
+			s.put(store.quantity, goods);
+			s.put(store.height, goods);
+			s.put(store.width, goods);
+			s.put(store.breadth, goods);
+			s.put(Simulate.goodsInWarehouses, goods);
+			s.put(Simulate.goodsInTrucks, goods);
+
+			// warehouses
+			long[] wmsb = new long[warehouses], wlsb = new long[warehouses];
+			int[] x = new int[warehouses], y = new int[warehouses], wrange = new int[warehouses], wlocation = new int[warehouses];
+			for (int i = 0; i < warehouses; i++)
+			{
+				Warehouses w = Simulate.allWarehouses.get(i);
+				uuid(w.id, w.prefix, wmsb, wlsb, i);
+				x[i] = w.x;
+				y[i] = w.y;
+				wrange[i] = w.tempControlled ? w.tempRange : -1;
+				wlocation[i] = w.locationId;
+			}
+			s.put(wmsb, warehouses);
+			s.put(wlsb, warehouses);
+			s.put(x, warehouses);
+			s.put(y, warehouses);
+			s.put(wrange, warehouses);
+			s.put(wlocation, warehouses);
+
+			// trucks
+			long[] tmsb = new long[trucks], tlsb = new long[trucks], arrival = new long[trucks];
+			int[] trange = new int[trucks], tlocation = new int[trucks];
+			int[] truckNumber = new int[locations];
+			for (int i = 0; i < trucks; i++)
+			{
+				Trucks t = Simulate.allTrucks.get(i);
+				truckNumber[t.locationId] = i;
+				uuid(t.id, t.prefix, tmsb, tlsb, i);
+				trange[i] = t.tempControlled ? t.tempRange : -1;
+				tlocation[i] = t.locationId;
+				arrival[i] = t.arrival;
+			}
+			s.put(tmsb, trucks);
+			s.put(tlsb, trucks);
+			s.put(trange, trucks);
+			s.put(tlocation, trucks);
+			s.put(arrival, trucks);
+			s.put(Simulate.trucksAtWarehouses, locations);
+
+			// goods ids at each location in order, as a count then the ids
+			int[] members = new int[locations + goods];
+			int m = 0;
+			for (int location = 0; location < locations; location++)
+			{
+				Members at = Simulate.topics[location].members();
+				members[m++] = at.size();
+				for (int i = 0; i < at.size(); i++)
+					members[m++] = at.get(i).id;
+			}
+			s.put(members, m);
+
+			// truck numbers docked at and on the road to each warehouse in order, as counts then the numbers
+			int[] docks = new int[2 * warehouses + trucks];
+			int d = 0;
+			for (Warehouses w : Simulate.allWarehouses)
+				for (Docks at : new Docks[] { w.docks, w.inbound })
+				{
+					docks[d++] = at.size();
+					for (int i = 0; i < at.size(); i++)
+						docks[d++] = truckNumber[at.get(i).locationId];
+				}
+			s.put(docks, d);
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(H_MAGIC, MAGIC);
+			header.putInt(H_VERSION, VERSION);
+			header.putInt(H_GOODS, goods);
+			header.putInt(H_WAREHOUSES, warehouses);
+			header.putInt(H_TRUCKS, trucks);
+			header.putInt(H_LOCATIONS, locations);
+			header.putInt(H_MEMBERS, m);
+			header.putInt(H_DOCKS, d);
+			header.putLong(H_SEED, Simulate.seed);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't write snapshot " + file, e);
+		}
+	}
+
+	// create the world from the snapshot in file, instead of Simulate.createWorld
+	public static void restore(String file)
+	{
+		Snapshot s = new Snapshot(file, FileChannel.MapMode.READ_ONLY);
+		GoodsStore store = Simulate.goodsStore;
+		try (FileChannel channel = FileChannel.open(s.path, StandardOpenOption.READ))
+		{
+			s.channel = channel;
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION)
+				throw new IllegalArgumentException(file + " is not a version " + VERSION + " world snapshot");
+
+			// the saved world's seed, so the simulation's random streams are the ones the saved world had
+			long seed = header.getLong(H_SEED);
+			if (seed != Simulate.seed)
+				System.out.println("Using the snapshot seed " + seed + " instead of " + Simulate.seed);
+			Simulate.setSeed(seed);
+			// split off the stream createWorld would have used, so the simulation gets the same streams after it
+			Simulate.random.split();
+			int goods = header.getInt(H_GOODS);
+			int warehouses = header.getInt(H_WAREHOUSES);
+			int trucks = header.getInt(H_TRUCKS);
+			int locations = header.getInt(H_LOCATIONS);
+
+			// goods
+			store.restore(goods);
+			s.get(store.tagMsb, goods);
+			s.get(store.tagLsb, goods);
+			s.get(store.categoryMask, goods);
+			s.get(store.useByDate, goods);
+			s.get(store.weight, goods);
+			s.get(store.quantity, goods);
+			s.get(store.height, goods);
+			s.get(store.width, goods);
+			s.get(store.breadth, goods);
+			Simulate.goodsInWarehouses = new int[goods];
+			Simulate.goodsInTrucks = new int[goods];
+			s.get(Simulate.goodsInWarehouses, goods);
+			s.get(Simulate.goodsInTrucks, goods);
+			System.out.println("Goods restored = " + goods);
+
+			// warehouses then trucks, which get the same location ids as they are created in the same order
+			long[] wmsb = new long[warehouses], wlsb = new long[warehouses];
+			int[] x = new int[warehouses], y = new int[warehouses], wrange = new int[warehouses], wlocation = new int[warehouses];
+			s.get(wmsb, warehouses);
+			s.get(wlsb, warehouses);
+			s.get(x, warehouses);
+			s.get(y, warehouses);
+			s.get(wrange, warehouses);
+			s.get(wlocation, warehouses);
+			for (int i = 0; i < warehouses; i++)
+			{
+				Warehouses w = new Warehouses(id("warehouses_", wmsb[i], wlsb[i]), x[i], y[i], wrange[i]);
+				w.locationId = Simulate.newLocation(w.id);
+				if (w.locationId != wlocation[i])
+					throw new IllegalStateException("warehouse " + w.id + " restored at location " + w.locationId + " not " + wlocation[i]);
+				Simulate.allWarehouses.add(w);
+			}
+			System.out.println("Warehouses restored = " + warehouses);
+
+			long[] tmsb = new long[trucks], tlsb = new long[trucks], arrival = new long[trucks];
+			int[] trange = new int[trucks], tlocation = new int[trucks];
+			s.get(tmsb, trucks);
+			s.get(tlsb, trucks);
+			s.get(trange, trucks);
+			s.get(tlocation, trucks);
+			s.get(arrival, trucks);
+			for (int i = 0; i < trucks; i++)
+			{
+				Trucks t = new Trucks(id("trucks_", tmsb[i], tlsb[i]), trange[i]);
+				t.locationId = Simulate.newLocation(t.id);
+				if (t.locationId != tlocation[i])
+					throw new IllegalStateException("truck " + t.id + " restored at location " + t.locationId + " not " + tlocation[i]);
+				Simulate.allTrucks.add(t);
+			}
+			int[] trucksAtWarehouses = new int[locations];
+			s.get(trucksAtWarehouses, locations);
+			System.out.println("Trucks restored = " + trucks);
+
+			// goods at each location, in the order they were there. Their handles are made as they are registered,
+			// so the goods at a location are near each other in the heap
+			int[] members = new int[header.getInt(H_MEMBERS)];
+			s.get(members, members.length);
+			for (int location = 0, m = 0; location < locations; location++)
+			{
+				Topic topic = Simulate.topics[location];
+				int n = members[m++];
+				topic.members().ensureCapacity(n);
+				for (int i = 0; i < n; i++)
+				{
+					int id = members[m++];
+					Goods g = new Goods(id);
+					store.handles[id] = g;
+					topic.register(g);
+				}
+			}
+			// goods that weren't anywhere
+			for (int id = 0; id < goods; id++)
+				if (store.handles[id] == null)
+					store.handles[id] = new Goods(id);
+
+			// trucks at or on the road to each warehouse, in the order they were there
+			int[] docks = new int[header.getInt(H_DOCKS)];
+			s.get(docks, docks.length);
+			int d = 0;
+			for (Warehouses w : Simulate.allWarehouses)
+			{
+				for (int n = docks[d++]; n > 0; n--)
+					Simulate.dockTruck(Simulate.allTrucks.get(docks[d++]), w);
+				for (int n = docks[d++]; n > 0; n--)
+				{
+					int i = docks[d++];
+					Simulate.departTruck(Simulate.allTrucks.get(i), w, arrival[i]);
+				}
+			}
+			for (int location = 0; location < locations; location++)
+				if (Simulate.trucksAtWarehouses[location] != trucksAtWarehouses[location])
+					throw new IllegalStateException("truck location " + location + " restored at " + Simulate.trucksAtWarehouses[location] + " not " + trucksAtWarehouses[location]);
+			System.out.println("Goods and truck locations restored");
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't read snapshot " + file, e);
+		}
+
+		Simulate.warehouseIndex = new WarehouseIndex(Simulate.allWarehouses);
+		Simulate.warehouseGrid = new WarehouseGrid(Simulate.allWarehouses);
+		Simulate.createTopics();
+	}
+}
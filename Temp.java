@@ -1,17 +1,25 @@
 package com.instaclustr.kongo2;
 
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.SplittableRandom;
 
 /*
  * Temperature objects have a Goods temperature category number (0-4) and associated range.
+ * They are immutable, so Goods, Trucks and Warehouses share one per category number, see Temp.of.
  */
 
 public class Temp
 {
-	double min = -273;
-	double max = 1000;
-	int subCatNum = -1;
+	final double min;
+	final double max;
+	final int subCatNum;
+	
+	// one shared Temp for each category number, indexed by subCatNum + 1
+	static final Temp[] SHARED = { new Temp(-1), new Temp(0), new Temp(1), new Temp(2), new Temp(3), new Temp(4) };
+	
+	static Temp of(int subCatNum)
+	{
+		return SHARED[subCatNum + 1];
+	}
 
 	// given a category number create a temp object with correct range
 	public Temp(int subCatNum)
@@ -19,13 +27,12 @@ public class Temp
 		this.subCatNum = subCatNum;
 		switch (subCatNum)
 		{
-			case -1: break; // any temp allowed
-			case 0: max = -20; break;
+			case 0: min = -273; max = -20; break;
 			case 1: min = 2; max = 8; break;
 			case 2: min = 8; max = 15; break;
 			case 3: min = 15; max = 25; break;
 			case 4: min = 1; max = 30; break;
-			default: break;
+			default: min = -273; max = 1000; break; // any temp allowed
 		}
 	}
 	
@@ -35,20 +42,18 @@ public class Temp
 		return (t >= min && t <= max);
 	}
 	
-	// return a random temp which is always in range
-	double randomTempInRange()
+	// return a random temp which is always in range, using the caller's random number stream
+	double randomTempInRange(SplittableRandom r)
 	{
-		Random r = new Random();
 		double d = min + (max - min) * r.nextDouble();
 		return d;
 	}
 	
 	// return a random temp which has a probability of being out of range
-	double randomTemp(double prob)
+	double randomTemp(double prob, SplittableRandom r)
 	{
-		Random r = new Random();
 		if (r.nextDouble() >= prob)
-			return randomTempInRange();
+			return randomTempInRange(r);
 		else
 		{
 			if (r.nextBoolean())
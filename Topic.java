@@ -0,0 +1,26 @@
+package com.instaclustr.kongo2;
+
+/*
+ * A Topic is a location (warehouse or truck) or the rfid load/unload event channel.
+ * Subscribers register with the topic and receive every event posted to it.
+ * Goods registered with a location topic are its Members, which both implementations keep so moves are O(1).
+ * Implementations are GuavaTopic (Guava Event Bus, subscribers found by @Subscribe annotations)
+ * DirectTopic (subscriber arrays per event type, handlers called directly), RingTopic (direct handlers called on the ring buffer thread)
+ * and LaneTopic (direct handlers called on the lane thread for the event location), see Simulate.dispatch.
+ */
+
+public interface Topic
+{
+	String identifier();
+	
+	// the Goods at this topic location
+	Members members();
+	
+	// false if the subscriber is already registered
+	boolean register(Object subscriber);
+	
+	// false if the subscriber is not registered
+	boolean unregister(Object subscriber);
+	
+	void post(Object event);
+}
@@ -1,8 +1,7 @@
 package com.instaclustr.kongo2;
 
 
-import java.util.Random;
-import java.util.UUID;
+import java.util.SplittableRandom;
 
 /*
  * Trucks move from one warehouse location to another warehouse location and transport Goods.
@@ -14,34 +13,43 @@ public class Trucks
     final String id;
     boolean tempControlled = false;
     int tempRange = -1;
+    int locationId = -1;	// dense location id, see Locations
     Temp temp = null;	// new temp object
     
-    // Hack: keep track of what Goods categories are on board by using a dummy Goods object
-    Goods categoriesOnBoard = new Goods();
+    // warehouse docks where the truck is now, see Docks. Trucks on the road are in the inbound Docks of the warehouse they are going to
+    Docks dockedAt = null;
+    int dockSlot = -1;
+    
+    // with Simulate.routing, the warehouse the truck is at or going to, and the hour it gets there
+    Warehouses warehouse = null;
+    long arrival = 0;
+    
 
     // create new Truck object
-	public Trucks()
+	public Trucks(SplittableRandom rand)
 	{
-	    this.id = this.prefix + randomUUID();
+	    this.id = this.prefix + Goods.randomUUID(rand);
 	    
-	    Random rand = new Random();
 	    if (rand.nextDouble() < 0.8)
         {
 	    		tempControlled = true;
       	  	int r = rand.nextInt(5);
       	  	tempRange = r;
-      	  	temp = new Temp(r);
+      	  	temp = Temp.of(r);
         }
-	    else temp = new Temp(-1);
+	    else temp = Temp.of(-1);
 	}
 
 	
-	public static String randomUUID()
-    {
-		UUID uuid = UUID.randomUUID();
-		String r = uuid.toString();
-		return r;
-    }
+	 
+	// truck restored from a Snapshot, tempRange is -1 if not temp controlled
+	Trucks(String id, int tempRange)
+	{
+		this.id = id;
+		this.tempControlled = tempRange >= 0;
+		this.tempRange = tempRange;
+		this.temp = Temp.of(tempRange);
+	}
 	 
 	 public String toStr()
      {
@@ -53,27 +61,11 @@ public class Trucks
          return s;
      }
 	 
-	 // when unloaded reset cats
-	 // Note that we don't have dry and temp cats here yet as not used to check if loading is ok
-	 public void resetCats()
-	 {
-		 categoriesOnBoard.categoryBulky = false;
-		 categoriesOnBoard.categoryEdible = false;
-		 categoriesOnBoard.categoryFragile = false;
-		 categoriesOnBoard.categoryHazardous = false;
-		 categoriesOnBoard.categoryMedicinal = false;
-		 categoriesOnBoard.categoryPerishable = false;
-	 }
-	 
-	 // Logical OR new goods loaded onto truck with existing categories
-	 public void updateCategories(Goods g)
+	 // Goods categories on board as a mask of Rules category bits, from the category counts of the goods in the truck (see Members).
+	 // Note that we don't have dry and temp cats here as not used to check if loading is ok
+	 public int categoriesOnBoard()
 	 {
-		 categoriesOnBoard.categoryBulky |= g.categoryBulky;
-		 categoriesOnBoard.categoryEdible |= g.categoryEdible;
-		 categoriesOnBoard.categoryFragile |= g.categoryFragile;
-		 categoriesOnBoard.categoryHazardous |= g.categoryHazardous;
-		 categoriesOnBoard.categoryMedicinal |= g.categoryMedicinal;
-		 categoriesOnBoard.categoryPerishable |= g.categoryPerishable;
+		 return Simulate.topics[locationId].members().categories() & Rules.TRUCK_CATEGORIES;
 	 }
 	 
 	 // check temp rules for delivery to warehouse
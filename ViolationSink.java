@@ -0,0 +1,186 @@
+package com.instaclustr.kongo2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.eventbus.Subscribe;
+
+/*
+ * Subscriber to the violations topic which writes RuleViolationEvents on its own thread, so event handlers never wait for I/O.
+ * Events are put on a bounded queue, and the sink thread takes them off in batches and writes them to a buffered file writer
+ * (or System.out for "-"), flushing when the queue is empty.
+ * When the queue is full the BLOCK policy waits for room and the DROP policy drops the event and counts it.
+ * Handlers may post from several threads at once (parallel partitions), the queue is the only shared state.
+ * If the sink thread fails (e.g. the file can't be written) it says so and stops, and later events are dropped, so handlers never block on a queue nobody takes from.
+ */
+
+public class ViolationSink implements Runnable
+{
+	enum Policy { BLOCK, DROP }
+
+	static final int BATCH = 1024;
+
+	final ArrayBlockingQueue<RuleViolationEvent> queue;
+	final Policy policy;
+	final BufferedWriter writer;
+	final boolean console;
+	final Thread thread;
+	volatile boolean running = true;
+	volatile boolean failed = false;	// the sink thread stopped before close
+
+	final AtomicLong published = new AtomicLong();
+	final AtomicLong dropped = new AtomicLong();
+	long written = 0;
+
+	public ViolationSink(String file, int capacity, Policy policy)
+	{
+		this.queue = new ArrayBlockingQueue<RuleViolationEvent>(capacity);
+		this.policy = policy;
+		this.console = file.equals("-");
+		try
+		{
+			if (console)
+				writer = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			else
+				writer = Files.newBufferedWriter(Paths.get(file));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("can't open violations file " + file, e);
+		}
+		thread = new Thread(this, "violation-sink");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Subscribe
+	public void violationEvent(RuleViolationEvent event)
+	{
+		published.incrementAndGet();
+		if (failed || policy == Policy.DROP)
+		{
+			if (failed || !queue.offer(event))
+				dropped.incrementAndGet();
+		}
+		else
+		{
+			try
+			{
+				// wait for room, unless the sink thread fails while waiting
+				while (!queue.offer(event, 100, TimeUnit.MILLISECONDS))
+					if (failed)
+					{
+						dropped.incrementAndGet();
+						return;
+					}
+			}
+			catch (InterruptedException e)
+			{
+				dropped.incrementAndGet();
+				Thread.currentThread().interrupt();
+			}
+		}
+		// queued just as the sink thread failed
+		if (failed)
+			dropQueued();
+	}
+
+	void dropQueued()
+	{
+		dropped.addAndGet(queue.drainTo(new ArrayList<RuleViolationEvent>()));
+	}
+
+	public void run()
+	{
+		ArrayList<RuleViolationEvent> batch = new ArrayList<RuleViolationEvent>(BATCH);
+		try
+		{
+			while (running || !queue.isEmpty())
+			{
+				RuleViolationEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				batch.add(first);
+				queue.drainTo(batch, BATCH - 1);
+				for (RuleViolationEvent e : batch)
+				{
+					writer.write(e.toStr());
+					writer.newLine();
+				}
+				written += batch.size();
+				batch.clear();
+				if (queue.isEmpty())
+					writer.flush();
+			}
+			writer.flush();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			System.err.println("Violation sink stopped: " + e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// stopped before close, so the batch it was writing and the queued events are dropped
+			if (running)
+			{
+				failed = true;
+				dropped.addAndGet(batch.size());
+				dropQueued();
+			}
+		}
+	}
+
+	// write everything queued, then stop the sink thread and close the file. Events published after close are not written.
+	public void close()
+	{
+		running = false;
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			// don't close System.out
+			if (console)
+				writer.flush();
+			else
+				writer.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Violation sink close failed: " + e);
+		}
+	}
+
+	public long published()
+	{
+		return published.get();
+	}
+
+	public long dropped()
+	{
+		return dropped.get();
+	}
+
+	// only safe to read after close
+	public long written()
+	{
+		return written;
+	}
+}
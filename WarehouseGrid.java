@@ -0,0 +1,182 @@
+package com.instaclustr.kongo2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Uniform grid over the Warehouses x, y locations, for nearest warehouse and radius queries.
+ * Cells are squares sized for a few warehouses each. The warehouses are stored cell by cell, and in each cell by WarehouseIndex bucket,
+ * in one array with their x and y alongside, so a query with a bucket mask (e.g. the buckets a truck can deliver to) only reads
+ * the warehouses it can return, and only from the cells near the query point.
+ * Nearest searches rings of cells outwards from the query cell until no closer warehouse can be in the next ring.
+ * Distances are euclidean, in the same units as x and y.
+ */
+
+public class WarehouseGrid
+{
+	// about this many warehouses per cell
+	static final int PER_CELL = 8;
+
+	final int minX, minY;
+	final int cellSize;
+	final int cols, rows;
+
+	// the warehouses of cell c and bucket b are start[c * NUM_BUCKETS + b] to start[c * NUM_BUCKETS + b + 1]
+	final int[] start;
+	final Warehouses[] warehouses;
+	final int[] xs, ys;
+
+	public WarehouseGrid(ArrayList<Warehouses> all)
+	{
+		int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+		for (Warehouses w : all)
+		{
+			x0 = Math.min(x0, w.x);
+			y0 = Math.min(y0, w.y);
+			x1 = Math.max(x1, w.x);
+			y1 = Math.max(y1, w.y);
+		}
+		if (all.isEmpty())
+			x0 = y0 = x1 = y1 = 0;
+		minX = x0;
+		minY = y0;
+		double area = ((double) x1 - x0 + 1) * ((double) y1 - y0 + 1);
+		cellSize = Math.max(1, (int) Math.ceil(Math.sqrt(area * PER_CELL / Math.max(1, all.size()))));
+		cols = (x1 - x0) / cellSize + 1;
+		rows = (y1 - y0) / cellSize + 1;
+
+		// counting sort by cell and bucket
+		int n = all.size();
+		start = new int[cols * rows * WarehouseIndex.NUM_BUCKETS + 1];
+		int[] key = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			Warehouses w = all.get(i);
+			key[i] = cell((w.x - minX) / cellSize, (w.y - minY) / cellSize) * WarehouseIndex.NUM_BUCKETS + WarehouseIndex.bucket(w);
+			start[key[i] + 1]++;
+		}
+		for (int k = 1; k < start.length; k++)
+			start[k] += start[k - 1];
+		int[] next = Arrays.copyOf(start, start.length - 1);
+		warehouses = new Warehouses[n];
+		xs = new int[n];
+		ys = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			Warehouses w = all.get(i);
+			int j = next[key[i]]++;
+			warehouses[j] = w;
+			xs[j] = w.x;
+			ys[j] = w.y;
+		}
+	}
+
+	int cell(int cx, int cy)
+	{
+		return cy * cols + cx;
+	}
+
+	int cellX(int x)
+	{
+		return Math.min(cols - 1, Math.max(0, (x - minX) / cellSize));
+	}
+
+	int cellY(int y)
+	{
+		return Math.min(rows - 1, Math.max(0, (y - minY) / cellSize));
+	}
+
+	static double distance(Warehouses a, Warehouses b)
+	{
+		return Math.sqrt(distance2(a.x, a.y, b.x, b.y));
+	}
+
+	static long distance2(int x0, int y0, int x1, int y1)
+	{
+		long dx = x1 - x0, dy = y1 - y0;
+		return dx * dx + dy * dy;
+	}
+
+	// nearest warehouse to x, y in the buckets with bits set in buckets (see WarehouseIndex), other than exclude. null if there isn't one
+	public Warehouses nearest(int x, int y, int buckets, Warehouses exclude)
+	{
+		buckets &= WarehouseIndex.ALL_BUCKETS;
+		int cx = cellX(x), cy = cellY(y);
+		int best = -1;
+		long bestD = Long.MAX_VALUE;
+		int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+		// distance from x, y to the nearest point in the cells next to its cell
+		int left = minX + cx * cellSize, bottom = minY + cy * cellSize;
+		int edge = Math.min(Math.min(x - left + 1, left + cellSize - x), Math.min(y - bottom + 1, bottom + cellSize - y));
+		for (int r = 0; r <= maxRing; r++)
+		{
+			// warehouses r cells away are at least r - 1 cells further away than that in x or y
+			if (best >= 0 && r > 0)
+			{
+				long near = Math.max(1, (long) (r - 1) * cellSize + edge);
+				if (near * near > bestD)
+					break;
+			}
+			for (int gy = cy - r; gy <= cy + r; gy++)
+			{
+				if (gy < 0 || gy >= rows)
+					continue;
+				// the whole row of cells on the top and bottom of the ring, just its ends in between
+				int step = gy == cy - r || gy == cy + r ? 1 : Math.max(1, 2 * r);
+				for (int gx = cx - r; gx <= cx + r; gx += step)
+				{
+					if (gx < 0 || gx >= cols)
+						continue;
+					int k = cell(gx, gy) * WarehouseIndex.NUM_BUCKETS;
+					for (int bits = buckets; bits != 0; )
+					{
+						// a run of buckets b to e - 1 is one range of warehouses
+						int b = Integer.numberOfTrailingZeros(bits);
+						int e = Integer.numberOfTrailingZeros(~bits & -(1 << b));
+						bits &= -(1 << e);
+						for (int i = start[k + b]; i < start[k + e]; i++)
+						{
+							long d = distance2(x, y, xs[i], ys[i]);
+							if (d < bestD && warehouses[i] != exclude)
+							{
+								best = i;
+								bestD = d;
+							}
+						}
+					}
+				}
+			}
+		}
+		return best < 0 ? null : warehouses[best];
+	}
+
+	// add the warehouses within radius of x, y in the buckets with bits set in buckets to out, in cell order. Returns how many were added
+	public int within(int x, int y, double radius, int buckets, ArrayList<Warehouses> out)
+	{
+		buckets &= WarehouseIndex.ALL_BUCKETS;
+		if (radius < 0)
+			return 0;
+		double r2 = radius * radius;
+		int added = 0;
+		int gx0 = cellX((int) Math.floor(x - radius)), gx1 = cellX((int) Math.ceil(x + radius));
+		int gy0 = cellY((int) Math.floor(y - radius)), gy1 = cellY((int) Math.ceil(y + radius));
+		for (int gy = gy0; gy <= gy1; gy++)
+			for (int gx = gx0; gx <= gx1; gx++)
+			{
+				int k = cell(gx, gy) * WarehouseIndex.NUM_BUCKETS;
+				for (int bits = buckets; bits != 0; )
+				{
+					int b = Integer.numberOfTrailingZeros(bits);
+					int e = Integer.numberOfTrailingZeros(~bits & -(1 << b));
+					bits &= -(1 << e);
+					for (int i = start[k + b]; i < start[k + e]; i++)
+						if (distance2(x, y, xs[i], ys[i]) <= r2)
+						{
+							out.add(warehouses[i]);
+							added++;
+						}
+				}
+			}
+		return added;
+	}
+}
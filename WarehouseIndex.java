@@ -0,0 +1,118 @@
+package com.instaclustr.kongo2;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/*
+ * Index of the Warehouses by temperature control: one bucket for the warehouses without it and one per tempRange (0-4).
+ * The buckets each Goods temp category (see Rules.TEMP_RANGES_ALLOWED) and each Trucks temp range (see Trucks.canDeliverToWarehouse)
+ * are allowed in are worked out once, and their warehouses are kept in one array per category, so picking a random compatible
+ * warehouse for goods placement or a truck destination is O(1) rather than a scan of all the warehouses.
+ */
+
+public class WarehouseIndex
+{
+	// bucket for warehouses without temp control, the tempRange buckets are tempRange + 1
+	static final int UNCONTROLLED = 0;
+	static final int NUM_BUCKETS = 6;
+	static final int ALL_BUCKETS = (1 << NUM_BUCKETS) - 1;
+
+	// buckets as bits 1 << bucket that goods of each temp sub category are allowed in, indexed by Rules.tempSubCat + 1 (0 = no temp category, so all).
+	// the allowed temp ranges are bits 1 << tempRange, so the buckets are one on, and uncontrolled warehouses are never allowed
+	static final int[] GOODS_BUCKETS = new int[NUM_BUCKETS];
+	// buckets a truck can deliver to, indexed by its tempRange + 1 (0 = not temp controlled, so all).
+	// trucks deliver to the same range, and ambient trucks to any range except freezing
+	static final int[] TRUCK_BUCKETS = { ALL_BUCKETS, 1 << 1, 1 << 2, 1 << 3, 1 << 4, (1 << 2) | (1 << 3) | (1 << 4) | (1 << 5) };
+	static
+	{
+		GOODS_BUCKETS[0] = ALL_BUCKETS;
+		for (int t = 0; t < NUM_BUCKETS - 1; t++)
+			GOODS_BUCKETS[t + 1] = Rules.TEMP_RANGES_ALLOWED[t] << 1;
+	}
+
+	final Warehouses[][] buckets = new Warehouses[NUM_BUCKETS][];
+	// the warehouses in the GOODS_BUCKETS and TRUCK_BUCKETS of each category
+	final Warehouses[][] forGoods = new Warehouses[NUM_BUCKETS][];
+	final Warehouses[][] forTrucks = new Warehouses[NUM_BUCKETS][];
+
+	public WarehouseIndex(ArrayList<Warehouses> warehouses)
+	{
+		ArrayList<ArrayList<Warehouses>> lists = new ArrayList<ArrayList<Warehouses>>();
+		for (int b = 0; b < NUM_BUCKETS; b++)
+			lists.add(new ArrayList<Warehouses>());
+		for (Warehouses w : warehouses)
+			lists.get(bucket(w)).add(w);
+		for (int b = 0; b < NUM_BUCKETS; b++)
+			buckets[b] = lists.get(b).toArray(new Warehouses[0]);
+
+		for (int c = 0; c < NUM_BUCKETS; c++)
+		{
+			forGoods[c] = join(GOODS_BUCKETS[c]);
+			forTrucks[c] = join(TRUCK_BUCKETS[c]);
+		}
+	}
+
+	static int bucket(Warehouses w)
+	{
+		return w.tempControlled ? w.tempRange + 1 : UNCONTROLLED;
+	}
+
+	// the warehouses in the buckets with bits set in mask, in bucket order
+	Warehouses[] join(int mask)
+	{
+		int n = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++)
+			if ((mask & (1 << b)) != 0)
+				n += buckets[b].length;
+		Warehouses[] ws = new Warehouses[n];
+		int i = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++)
+			if ((mask & (1 << b)) != 0)
+			{
+				System.arraycopy(buckets[b], 0, ws, i, buckets[b].length);
+				i += buckets[b].length;
+			}
+		return ws;
+	}
+
+	// buckets goods with this categories mask can be put in given the temp rules
+	static int goodsBuckets(int mask)
+	{
+		return GOODS_BUCKETS[Rules.tempSubCat(mask) + 1];
+	}
+
+	// buckets truck can deliver to given the temp rules
+	static int truckBuckets(Trucks truck)
+	{
+		return TRUCK_BUCKETS[truck.tempControlled ? truck.tempRange + 1 : 0];
+	}
+
+	// warehouses goods with this categories mask can be put in given the temp rules
+	public Warehouses[] forGoods(int mask)
+	{
+		return forGoods[Rules.tempSubCat(mask) + 1];
+	}
+
+	// warehouses truck can deliver to given the temp rules
+	public Warehouses[] forTruck(Trucks truck)
+	{
+		return forTrucks[truck.tempControlled ? truck.tempRange + 1 : 0];
+	}
+
+	// a random warehouse for goods with this categories mask, null if there are none
+	public Warehouses randomForGoods(int mask, SplittableRandom rand)
+	{
+		return random(forGoods(mask), rand);
+	}
+
+	// a random warehouse truck can deliver to, null if there are none
+	public Warehouses randomForTruck(Trucks truck, SplittableRandom rand)
+	{
+		return random(forTruck(truck), rand);
+	}
+
+	static Warehouses random(Warehouses[] ws, SplittableRandom rand)
+	{
+		return ws.length == 0 ? null : ws[rand.nextInt(ws.length)];
+	}
+}
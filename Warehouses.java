@@ -1,7 +1,6 @@
 package com.instaclustr.kongo2;
 
-import java.util.Random;
-import java.util.UUID;
+import java.util.SplittableRandom;
 
 /*
  * Warehouses have an x, y location, an id, and may be temperature controlled.
@@ -15,15 +14,17 @@ public class Warehouses
     boolean tempControlled = false;
     int tempRange = -1;
     Temp temp = null;
+    final Docks docks = new Docks();	// trucks docked here
+    final Docks inbound = new Docks();	// trucks on the road to here, see Simulate.routing
+    int locationId = -1;				// dense location id, see Locations
 
     // create new warehouse object
-	public Warehouses(int x, int y)
+	public Warehouses(int x, int y, SplittableRandom rand)
 	{
-	    this.id = this.prefix + randomUUID();
+	    this.id = this.prefix + Goods.randomUUID(rand);
 	    this.x = x;
 	    this.y = y;
 	    
-	    Random rand = new Random();
 	    
 	    // temp controlled warehouse?
 	    if (rand.nextDouble() < 0.8)
@@ -31,17 +32,23 @@ public class Warehouses
 	    		tempControlled = true;
       	  	int r = rand.nextInt(5);
       	  	tempRange = r;
-      	  	temp = new Temp(r);
+      	  	temp = Temp.of(r);
         }
-	    else temp = new Temp(-1);
+	    else temp = Temp.of(-1);
+	}
+
+	 
+	// warehouse restored from a Snapshot, tempRange is -1 if not temp controlled
+	Warehouses(String id, int x, int y, int tempRange)
+	{
+		this.id = id;
+		this.x = x;
+		this.y = y;
+		this.tempControlled = tempRange >= 0;
+		this.tempRange = tempRange;
+		this.temp = Temp.of(tempRange);
 	}
 
-	public static String randomUUID()
-    {
-		UUID uuid = UUID.randomUUID();
-		String r = uuid.toString();
-		return r;
-    }
 	 
 	public String toStr()
     {
@@ -0,0 +1,93 @@
+package com.instaclustr.kongo2;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * A Simulate world for benchmarks, created once per trial with a fixed seed.
+ * The simulation prints to System.out, and the violations sink writes to it too, which is sent nowhere while the benchmark runs
+ * so the benchmarks measure the simulation and not the console.
+ */
+
+@State(Scope.Thread)
+public class BenchmarkWorld
+{
+	@Param({"1000", "10000"})
+	int goods;
+	
+	// laid out as a square(ish) grid
+	@Param({"100"})
+	int warehouses;
+	
+	@Param({"200"})
+	int trucks;
+	
+	@Param({"DIRECT", "GUAVA", "RING", "LANES"})
+	Simulate.Dispatch dispatch;
+	
+	@Param({"false"})
+	boolean parallel;
+	
+	PrintStream out;
+	
+	// the loop phase to run next, in loop order, and the simulated time
+	static final int UNLOAD = 0, LOAD = 1, MOVE = 2, SENSOR = 3;
+	int nextPhase = UNLOAD;
+	long time = 0;
+	
+	@Setup(Level.Trial)
+	public void createWorld()
+	{
+		out = silence();
+		Simulate.reset();
+		Simulate.setSeed(42);
+		Simulate.verbose = false;
+		Simulate.violationsFile = "-";
+		Simulate.dispatch = dispatch;
+		Simulate.parallel = parallel;
+		int maxX = (int) Math.sqrt(warehouses);
+		Simulate.createWorld(goods, maxX, warehouses / maxX, trucks);
+		Simulate.startLoop();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		System.setOut(out);
+		Simulate.reset();
+	}
+	
+	// run the next phase of the simulation loop, returns the events produced.
+	// waits for RING and LANES dispatch to handle the events, so the phase time includes the handlers as it does for the other modes
+	long runNextPhase()
+	{
+		long events = 0;
+		switch (nextPhase)
+		{
+			case UNLOAD: events = Simulate.runPhase(Partition.Phase.UNLOAD, time); break;
+			case LOAD: events = Simulate.runPhase(Partition.Phase.LOAD, time); break;
+			case MOVE: Simulate.moveTrucks(time); break;
+			case SENSOR: events = Simulate.runPhase(Partition.Phase.SENSOR, time); time++; break;
+		}
+		Simulate.drain();
+		nextPhase = (nextPhase + 1) % 4;
+		return events;
+	}
+	
+	// run phases until phase is the next to run, so a benchmark of a phase sees the world as the loop would
+	void runUpTo(int phase)
+	{
+		while (nextPhase != phase)
+			runNextPhase();
+	}
+	
+	// replace System.out with a stream that discards everything, returns the old System.out
+	static PrintStream silence()
+	{
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		return out;
+	}
+}
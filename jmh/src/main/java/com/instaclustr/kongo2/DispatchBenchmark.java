@@ -0,0 +1,72 @@
+package com.instaclustr.kongo2;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Posting a Sensor event, or a SensorFrame with all the readings for a truck, to a location topic with N registered Goods,
+ * Guava Event Bus against direct dispatch.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark
+{
+	@Param({"10", "100", "1000"})
+	int goods;
+	
+	@Param({"DIRECT", "GUAVA"})
+	Simulate.Dispatch dispatch;
+	
+	Topic topic;
+	Sensor sensor;
+	SensorFrame frame;
+	PrintStream out;
+	
+	@Setup
+	public void setup()
+	{
+		out = BenchmarkWorld.silence();
+		Simulate.reset();
+		Simulate.dispatch = dispatch;
+		topic = Simulate.newTopic("warehouse");
+		int location = Locations.add("warehouse");
+		SplittableRandom rand = new SplittableRandom(42);
+		for (int i = 0; i < goods; i++)
+			topic.register(new Goods(rand));
+		sensor = new Sensor(0, Metric.HUMIDITY, 50, location);
+		frame = new SensorFrame(0, location);
+		frame.set(Metric.TEMP, 10);
+		frame.set(Metric.HUMIDITY, 50);
+		frame.set(Metric.ILLUMINANCE, 400);
+		frame.set(Metric.ACCELERATION, 2);
+		frame.set(Metric.VIBRATION_DISPLACEMENT, 5);
+		frame.set(Metric.VIBRATION_VELOCITY, 50);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		System.setOut(out);
+		Simulate.reset();
+	}
+	
+	@Benchmark
+	public void postSensor()
+	{
+		topic.post(sensor);
+	}
+	
+	@Benchmark
+	public void postSensorFrame()
+	{
+		topic.post(frame);
+	}
+}
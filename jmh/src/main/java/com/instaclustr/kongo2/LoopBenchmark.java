@@ -0,0 +1,76 @@
+package com.instaclustr.kongo2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Each phase of Simulate.loop, and a whole hour, for worlds of different sizes.
+ * Before each invocation of a phase benchmark the other phases are run, so the phase sees the world the loop would give it.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopBenchmark
+{
+	public static class BeforeUnload extends BenchmarkWorld
+	{
+		@Setup(Level.Invocation)
+		public void before() { runUpTo(UNLOAD); }
+	}
+	
+	public static class BeforeLoad extends BenchmarkWorld
+	{
+		@Setup(Level.Invocation)
+		public void before() { runUpTo(LOAD); }
+	}
+	
+	public static class BeforeMove extends BenchmarkWorld
+	{
+		@Setup(Level.Invocation)
+		public void before() { runUpTo(MOVE); }
+	}
+	
+	public static class BeforeSensor extends BenchmarkWorld
+	{
+		@Setup(Level.Invocation)
+		public void before() { runUpTo(SENSOR); }
+	}
+	
+	@Benchmark
+	public long unload(BeforeUnload world)
+	{
+		return world.runNextPhase();
+	}
+	
+	@Benchmark
+	public long load(BeforeLoad world)
+	{
+		return world.runNextPhase();
+	}
+	
+	@Benchmark
+	public long moveTrucks(BeforeMove world)
+	{
+		return world.runNextPhase();
+	}
+	
+	@Benchmark
+	public long sensors(BeforeSensor world)
+	{
+		return world.runNextPhase();
+	}
+	
+	// all four phases
+	@Benchmark
+	public long hour(BeforeUnload world)
+	{
+		long events = 0;
+		for (int i = 0; i < 4; i++)
+			events += world.runNextPhase();
+		return events;
+	}
+}
@@ -0,0 +1,71 @@
+package com.instaclustr.kongo2;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Handling an RFIDLoadEvent onto a truck with N Goods already on board, including the ColocatedCheckEvent fan-out to them.
+ * Each invocation loads one Goods and unloads it again with an RFIDUnloadEvent so the truck stays the same size.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RFIDLoadBenchmark
+{
+	@Param({"10", "100", "1000"})
+	int goods;
+	
+	@Param({"DIRECT", "GUAVA"})
+	Simulate.Dispatch dispatch;
+	
+	RFIDLoadEvent load;
+	RFIDUnloadEvent unload;
+	PrintStream out;
+	
+	@Setup
+	public void setup()
+	{
+		out = BenchmarkWorld.silence();
+		Simulate.reset();
+		Simulate.dispatch = dispatch;
+		Simulate.verbose = false;
+		
+		int warehouse = Simulate.newLocation("warehouse");
+		int truck = Simulate.newLocation("truck");
+		Simulate.rfidLoadTopic = Simulate.newTopic("load");
+		Simulate.rfidLoadTopic.register(new RFIDLoadEvent());
+		Simulate.rfidUnloadTopic = Simulate.newTopic("unload");
+		Simulate.rfidUnloadTopic.register(new RFIDUnloadEvent());
+		
+		SplittableRandom rand = new SplittableRandom(42);
+		for (int i = 0; i < goods; i++)
+			Simulate.topics[truck].register(new Goods(rand));
+		
+		Goods moving = new Goods(rand);
+		Simulate.topics[warehouse].register(moving);
+		
+		load = new RFIDLoadEvent(0, moving.id, warehouse, truck);
+		unload = new RFIDUnloadEvent(0, moving.id, truck, warehouse);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		System.setOut(out);
+		Simulate.reset();
+	}
+	
+	@Benchmark
+	public void loadAndUnload()
+	{
+		Simulate.rfidLoadTopic.post(load);
+		Simulate.rfidUnloadTopic.post(unload);
+	}
+}
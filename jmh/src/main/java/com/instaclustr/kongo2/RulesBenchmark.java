@@ -0,0 +1,77 @@
+package com.instaclustr.kongo2;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Goods rule checks: sensor category rules and truck co-location rules.
+ * Each invocation checks the next Goods of a population of random Goods, so the goods count sets the working set.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RulesBenchmark
+{
+	@Param({"1000", "100000"})
+	int goods;
+	
+	Goods[] population;
+	Sensor[] sensors;
+	int next = 0;
+	
+	@Setup
+	public void setup()
+	{
+		Simulate.reset();
+		SplittableRandom rand = new SplittableRandom(42);
+		population = new Goods[goods];
+		for (int i = 0; i < goods; i++)
+			population[i] = new Goods(rand);
+		
+		// all the metrics, with values that sometimes violate the rules
+		int location = Locations.add("location");
+		sensors = new Sensor[1024];
+		for (int i = 0; i < sensors.length; i++)
+			sensors[i] = new Sensor(i, Metric.VALUES[i % Metric.VALUES.length], rand.nextDouble() * 100, location);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		Simulate.reset();
+	}
+	
+	int next()
+	{
+		int i = next;
+		next = i + 1 == goods ? 0 : i + 1;
+		return i;
+	}
+	
+	@Benchmark
+	public String violatedSensorCatRules()
+	{
+		int i = next();
+		return population[i].violatedSensorCatRules(sensors[i & (sensors.length - 1)]);
+	}
+	
+	@Benchmark
+	public boolean checkSensorCatRules()
+	{
+		int i = next();
+		return population[i].checkSensorCatRules(sensors[i & (sensors.length - 1)]);
+	}
+	
+	@Benchmark
+	public boolean notAllowedInTruck()
+	{
+		int i = next();
+		return population[i].notAllowedInTruck(population[goods - 1 - i]);
+	}
+}
@@ -0,0 +1,71 @@
+package com.instaclustr.kongo2;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * WarehouseGrid queries on a square grid of warehouses, one per x, y point as Simulate.createWorld makes them.
+ * Each invocation queries from the next of a set of random warehouses, with the buckets of the next truck temp range (see WarehouseIndex.TRUCK_BUCKETS).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WarehouseGridBenchmark
+{
+	@Param({"10000", "100000"})
+	int warehouses;
+
+	@Param({"3"})
+	double radius;
+
+	WarehouseGrid grid;
+	Warehouses[] from;
+	ArrayList<Warehouses> out = new ArrayList<Warehouses>();
+	int next = 0;
+
+	@Setup
+	public void setup()
+	{
+		SplittableRandom rand = new SplittableRandom(42);
+		ArrayList<Warehouses> all = new ArrayList<Warehouses>();
+		int side = (int) Math.sqrt(warehouses);
+		for (int x = 0; x < side; x++)
+			for (int y = 0; y < side; y++)
+				all.add(new Warehouses(x, y, rand));
+		grid = new WarehouseGrid(all);
+		from = new Warehouses[1024];
+		for (int i = 0; i < from.length; i++)
+			from[i] = all.get(rand.nextInt(all.size()));
+	}
+
+	int next()
+	{
+		int i = next;
+		next = (i + 1) & (from.length - 1);
+		return i;
+	}
+
+	@Benchmark
+	public Warehouses nearest()
+	{
+		int i = next();
+		Warehouses w = from[i];
+		return grid.nearest(w.x, w.y, WarehouseIndex.TRUCK_BUCKETS[i % WarehouseIndex.NUM_BUCKETS], w);
+	}
+
+	@Benchmark
+	public int within()
+	{
+		int i = next();
+		Warehouses w = from[i];
+		out.clear();
+		return grid.within(w.x, w.y, radius, WarehouseIndex.TRUCK_BUCKETS[i % WarehouseIndex.NUM_BUCKETS], out);
+	}
+}